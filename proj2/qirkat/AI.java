@@ -3,8 +3,9 @@ package qirkat;
 import java.util.ArrayList;
 import java.util.Random;
 
-import static qirkat.PieceColor.BLACK;
-import static qirkat.PieceColor.WHITE;
+import static qirkat.TranspositionTable.EXACT;
+import static qirkat.TranspositionTable.LOWER;
+import static qirkat.TranspositionTable.UPPER;
 
 /**
  * A Player that computes its own moves.
@@ -15,24 +16,82 @@ class AI extends Player {
 
     /**
      * Maximum minimax search depth before going to static evaluation.
+     * In practice the time allowed for a move runs out well before the
+     * search gets this deep.
      */
-    private static final int MAX_DEPTH = 8;
+    static final int MAX_DEPTH = 32;
+
+    /**
+     * The search looks at the clock once every this many positions.
+     */
+    private static final int CLOCK_INTERVAL = 1024;
+
+    /**
+     * The fraction of the time allowed for a move after which no new
+     * iteration is begun, normally and when the best move has just
+     * changed.
+     */
+    private static final double
+        SOFT_LIMIT = 0.4,
+        UNSTABLE_SOFT_LIMIT = 0.7;
+
     /**
-     * A position magnitude indicating a win (for white if positive, black
-     * if negative).
+     * Aspiration windows (see aspire): the shallowest iteration to use
+     * one, its initial half-width, and the factor by which it widens
+     * after a failed search.
      */
-    private static final int WINNING_VALUE = Integer.MAX_VALUE - 1;
+    private static final int
+        ASPIRATION_DEPTH = 4,
+        ASPIRATION_WINDOW = Evaluation.PIECE_VALUE / 4,
+        ASPIRATION_GROWTH = 4;
+
+    /**
+     * Selective search (see Searcher.search): the fewest pieces on the
+     * board for which it is used; the shallowest depth and earliest move
+     * reduced by late-move reductions, and the earliest reduced by two
+     * plies; the deepest level to which futility pruning applies, and its
+     * margin per level.
+     */
+    private static final int
+        SELECTIVE_PIECES = 8,
+        LMR_DEPTH = 3,
+        LMR_MOVES = 3,
+        LMR_LATE_MOVES = 6,
+        FUTILITY_DEPTH = 2,
+        FUTILITY_MARGIN = Evaluation.PIECE_VALUE;
+
+    /**
+     * Ordering keys for moves (see orderKey).  History scores are kept
+     * below HISTORY_LIMIT; the two killer moves rank just above any
+     * history score, and captures above those by number of pieces taken.
+     * The move suggested by an earlier search comes first of all.
+     */
+    private static final int
+        HISTORY_LIMIT = 1 << 16,
+        KILLER_KEY = HISTORY_LIMIT + 1,
+        CAPTURE_KEY = 2 * HISTORY_LIMIT,
+        HINT_KEY = Integer.MAX_VALUE;
+
     /**
-     * A magnitude greater than a normal value.
+     * A magnitude greater than a normal value: the value of a won
+     * position.
      */
     private static final int INFTY = Integer.MAX_VALUE;
+
     /**
-     * The move found by the last call to one of the
-     * ...FindMove methods
-     * below.
+     * The value of a position the tablebases show to be won with no
+     * further moves.  A position won (lost) in D plies is worth D less
+     * (more) than TABLEBASE_WIN (-TABLEBASE_WIN), so that quicker wins
+     * and slower losses are preferred.  It is well above any heuristic
+     * value, and within the range the transposition table records.
      */
-    private Move _lastFoundMove;
+    private static final int TABLEBASE_WIN = 1000 * Evaluation.PIECE_VALUE;
 
+    /**
+     * Milliseconds allowed for pondering: effectively unlimited, since
+     * pondering stops when the opponent moves.
+     */
+    private static final long PONDER_TIME = 3600 * 1000;
     /**
      * A new AI for GAME that will play MYCOLOR. Creates
      * a dumb AI iff DUMB true
@@ -54,97 +113,854 @@ class AI extends Player {
 
     /**
      * Return a move for me from the current position, assuming there
-     * is a move.
+     * is a move.  A move from the game's opening book is played without
+     * searching.  The search works on compact moves; only the move it
+     * settles on is turned back into a Move.
      */
-    private Move findMove() {
-        Board b = new Board(board());
-        if (myColor() == WHITE) {
-            findMove(b, MAX_DEPTH, true, 1, -INFTY, INFTY);
-        } else {
-            findMove(b, MAX_DEPTH, true, -1, -INFTY, INFTY);
+    Move findMove() {
+        if (_dumb) {
+            ArrayList<Move> moves = board().getMoves();
+            return moves.get(new Random().nextInt(moves.size()));
         }
-        return _lastFoundMove;
+        stopPondering();
+        long booked = game().book().choose(board().position(),
+                                           game()::nextRandom);
+        if (booked != 0) {
+            _completedDepth = 0;
+            return board().toMove(booked);
+        }
+        prepareTable();
+        _abort = false;
+        return board().toMove(deepen(board().position(),
+                                     game().moveTime(), game().threads()));
     }
 
     /**
-     * Find a move from position BOARD and return its value, recording
-     * the move found in _lastFoundMove iff SAVEMOVE. The move
-     * should have maximal value or have value > BETA if SENSE==1,
-     * and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     * DEPTH levels.  Searching at level 0 simply returns a static estimate
-     * of the board value and does not set _lastMoveFound.
+     * Make sure my transposition table has the size currently set for the
+     * game, and mark the start of a new search.
      */
-    private int findMove(Board board, int depth, boolean saveMove, int sense,
-                         int alpha, int beta) {
-        Move best;
-        best = null;
-        ArrayList<Move> moves = board.getMoves();
-        if (_dumb) {
-            Random rand = new Random();
-            _lastFoundMove = moves.get(rand.nextInt(moves.size()));
-            return 0;
-        }
-        if (depth == 0 || board.gameOver()) {
-            return staticScore(board);
-        }
-        int bestScore = 0;
-        for (Move mv : moves) {
-            Board hypot = new Board(board);
-            hypot.makeMove(mv);
-            if (hypot.gameOver()) {
-                if (saveMove) {
-                    _lastFoundMove = mv;
+    private void prepareTable() {
+        if (_table == null || _table.megabytes() != game().hashSize()) {
+            _table = new TranspositionTable(game().hashSize());
+        }
+        _table.newSearch();
+    }
+
+    /**
+     * Start thinking in the background while my opponent chooses its
+     * move.  If an earlier search suggests what that move will be, I
+     * search the position after it; otherwise I search the current
+     * position, from my opponent's side, which fills my transposition
+     * table with results for the positions after each of its moves.
+     */
+    @Override
+    void startPondering() {
+        if (_dumb || _ponderer != null) {
+            return;
+        }
+        BitBoard position = board().position();
+        if (!position.hasMove()) {
+            return;
+        }
+        prepareTable();
+        int symmetry = position.canonicalSymmetry();
+        long entry = _table.probe(position.key(symmetry));
+        long move = entry == 0 ? 0
+            : BitBoard.transform(TranspositionTable.move(entry), symmetry);
+        if (entry != 0 && isLegal(position, move)) {
+            position.make(move);
+            if (!position.hasMove()) {
+                return;
+            }
+            position = new BitBoard(position);
+        }
+        BitBoard pondered = position;
+        int threads = game().threads();
+        _abort = false;
+        _pondered = null;
+        _ponderer = new Thread(() -> {
+            long best = deepen(pondered, PONDER_TIME, threads);
+            _ponderMove = best;
+            _ponderDepth = _completedDepth;
+            _ponderScore = _score;
+            _pondered = pondered;
+        });
+        _ponderer.start();
+    }
+
+    /**
+     * Return true iff MV is a legal encoded move in POSITION.
+     */
+    private static boolean isLegal(BitBoard position, long mv) {
+        long[] moves = new long[BitBoard.MAX_MOVES];
+        int n = position.moves(moves);
+        for (int i = 0; i < n; i += 1) {
+            if (moves[i] == mv) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stop any thinking begun by startPondering.  Its results stay in my
+     * transposition table, and if it searched the position I am next
+     * asked to move from, findMove carries on from where it stopped.
+     */
+    @Override
+    void stopPondering() {
+        if (_ponderer != null) {
+            _abort = true;
+            joinAll(new Thread[] { _ponderer });
+            _ponderer = null;
+        }
+    }
+
+    /**
+     * Return the best move for me from POSITION found by searching to
+     * successively greater depths, up to the depth limit, within about
+     * BUDGET milliseconds, using THREADS threads.  The result is the best
+     * move of the deepest search that finished.  A search that runs out
+     * of time is abandoned part way through.  No new depth is begun once
+     * SOFT_LIMIT of the budget is spent, or UNSTABLE_SOFT_LIMIT if the
+     * last two searches disagreed.  If there is only one legal move, it
+     * is returned without searching, as is the best move according to the
+     * game's tablebases if they cover POSITION.  If POSITION is the one last
+     * pondered, the search starts from the depth pondering reached, with
+     * its move and value.
+     *
+     * With more than one thread, the search is a "lazy SMP" one: the
+     * main searcher deepens as it would alone, while helpers search the
+     * same position independently (see Searcher.help).  They cooperate
+     * only through the transposition table, whose entries from any
+     * thread cut off or order the others' searches.  Only the main
+     * searcher's result is used.
+     */
+    private long deepen(BitBoard position, long budget, int threads) {
+        while (_searchers.size() < threads) {
+            _searchers.add(new Searcher(_searchers.size()));
+        }
+        for (Searcher searcher : _searchers) {
+            searcher.reset(position);
+        }
+        int n = position.moves(_rootMoves);
+        long best = _rootMoves[0];
+        int score = 0;
+        _completedDepth = 0;
+        if (_pondered != null && _pondered.samePosition(position)
+            && _ponderDepth > 0) {
+            best = _ponderMove;
+            score = _ponderScore;
+            _completedDepth = _ponderDepth;
+        }
+        _pondered = null;
+        if (n == 1 || Math.abs(score) == INFTY) {
+            return best;
+        }
+        long known = game().tablebase().bestMove(position);
+        if (known != 0) {
+            return known;
+        }
+        long start = System.nanoTime(), nanos = budget * 1000000;
+        _deadline = start + nanos;
+        Thread[] helpers = new Thread[threads - 1];
+        for (int i = 0; i < helpers.length; i += 1) {
+            helpers[i] = new Thread(_searchers.get(i + 1)::help);
+            helpers[i].start();
+        }
+        try {
+            Searcher main = _searchers.get(0);
+            for (int depth = _completedDepth + 1; depth <= _depthLimit;
+                 depth += 1) {
+                main._rootHint = best;
+                score = main.aspire(depth, score);
+                if (main._stopped) {
+                    break;
                 }
-                return sense * INFTY;
-            }
-        }
-        for (Move mv : moves) {
-            Board nextBoard = new Board(board);
-            nextBoard.makeMove(mv);
-            int findMoveOp = findMove(nextBoard, depth - 1,
-                    false, -sense, alpha, beta);
-            if (best == null || findMoveOp * sense > sense * bestScore) {
-                bestScore = findMoveOp;
-                best = mv;
-                if (sense == 1) {
-                    alpha = Math.max(alpha, bestScore);
-                } else if (sense == -1) {
-                    beta = Math.min(beta, bestScore);
+                double limit = SOFT_LIMIT;
+                if (depth > 1 && main._lastFoundMove != best) {
+                    limit = UNSTABLE_SOFT_LIMIT;
                 }
-                if (beta <= alpha) {
+                best = main._lastFoundMove;
+                _completedDepth = depth;
+                _score = score;
+                if (Math.abs(score) == INFTY
+                    || System.nanoTime() - start > limit * nanos) {
                     break;
                 }
             }
+        } finally {
+            _abort = true;
+            joinAll(helpers);
+        }
+        return best;
+    }
+
+    /**
+     * Wait for all of THREADS to finish.  An interrupt does not cut the
+     * wait short (the threads are about to stop anyway), but is passed
+     * on to the caller.
+     */
+    private static void joinAll(Thread[] threads) {
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException excp) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Evaluate positions with EVALUATION from now on, forgetting results
+     * found with any other.
+     */
+    void setEvaluation(Evaluation evaluation) {
+        _evaluation = evaluation;
+        if (_table != null) {
+            _table.clear();
+        }
+    }
+
+    /**
+     * Limit searches to depth LIMIT (at most MAX_DEPTH), regardless of
+     * the time available.  For testing and measurement.
+     */
+    void setDepthLimit(int limit) {
+        _depthLimit = Math.max(1, Math.min(MAX_DEPTH, limit));
+    }
+
+    /**
+     * Return the value of POSITION for the side to move, searching to
+     * DEPTH within the window ALPHA..BETA as a node below the root of a
+     * search, so that pruning applies, and recording results in my
+     * transposition table.  For testing.
+     */
+    int searchBelowRoot(BitBoard position, int depth, int alpha, int beta) {
+        if (_searchers.isEmpty()) {
+            _searchers.add(new Searcher(0));
+        }
+        prepareTable();
+        _abort = false;
+        _deadline = Long.MAX_VALUE;
+        Searcher searcher = _searchers.get(0);
+        searcher.reset(position);
+        return searcher.search(depth, 1, alpha, beta);
+    }
+
+    /**
+     * Return the entry (as encoded by TranspositionTable) my
+     * transposition table has for POSITION, or 0 if none.  For testing.
+     */
+    long tableEntry(BitBoard position) {
+        return _table == null ? 0
+            : _table.probe(position.canonicalKey());
+    }
+
+    /**
+     * Make my searches selective (see Searcher.search) iff ON, as they
+     * are unless told otherwise; otherwise every move is searched to the
+     * full depth.  Forgets results found the other way.  For testing and
+     * measurement.
+     */
+    void setSelective(boolean on) {
+        _selective = on;
+        if (_table != null) {
+            _table.clear();
+        }
+    }
+
+    /**
+     * Return the depth of the deepest search completed for my last move.
+     */
+    int completedDepth() {
+        return _completedDepth;
+    }
+
+    /**
+     * Return the number of positions visited while finding my last move,
+     * by all threads.
+     */
+    long nodes() {
+        long nodes;
+        nodes = 0;
+        for (Searcher searcher : _searchers) {
+            nodes += searcher._nodes;
+        }
+        return nodes;
+    }
+
+    /**
+     * Swap the move with the largest key among MOVES[I .. N-1], whose
+     * keys are KEYS[I .. N-1], into MOVES[I] (the first such, if there
+     * are several), swapping the keys to match.
+     */
+    private static void selectNext(long[] moves, int[] keys, int i, int n) {
+        int j = i;
+        for (int k = i + 1; k < n; k += 1) {
+            if (keys[k] > keys[j]) {
+                j = k;
+            }
         }
-        if (saveMove) {
-            _lastFoundMove = best;
+        if (j != i) {
+            long mv = moves[i];
+            moves[i] = moves[j];
+            moves[j] = mv;
+            int key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
         }
-        return bestScore;
     }
 
     /**
-     * Return a heuristic value for BOARD.
+     * One thread's share of the search for a move.  Each has its own
+     * copy of the position and its own move buffers, killer moves and
+     * history, and shares only the transposition table and the time
+     * limits with the others.
      */
-    private int staticScore(Board board) {
-        if (board.gameOver()) {
-            if (board.whoseMove() == WHITE) {
+    private final class Searcher {
+
+        /**
+         * A new Searcher whose number among my searchers is ID.  Searcher
+         * 0 is the main one.
+         */
+        Searcher(int id) {
+            _id = id;
+        }
+
+        /**
+         * Prepare to search POSITION for a new move.
+         */
+        void reset(BitBoard position) {
+            _position = new BitBoard(position);
+            _position.setSquareValues(_evaluation.squareValues());
+            _tablebase = game().tablebase();
+            _nodes = 0;
+            _stopped = false;
+            _lastFoundMove = 0;
+            ageHistory();
+            for (long[] killers : _killers) {
+                killers[0] = killers[1] = 0;
+            }
+        }
+
+        /**
+         * Search _position to successively greater depths, as a helper
+         * to the main searcher, until done or told to stop.  Helpers with
+         * odd IDs search one ply deeper than the others at each step, so
+         * that the threads spread over more than one depth and fill the
+         * table with results the main search can use.
+         */
+        void help() {
+            int score = 0;
+            for (int depth = 1 + _id % 2; depth <= _depthLimit;
+                 depth += 1) {
+                _rootHint = _lastFoundMove;
+                score = aspire(depth, score);
+                if (_stopped || Math.abs(score) == INFTY) {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Return the value of _position for the side to move, searching to
+         * DEPTH, and record the best move in _lastFoundMove.  The search
+         * starts with a narrow window around GUESS, the previous iteration's
+         * value, widening it on the failing side after each search whose
+         * value falls outside it.  For shallow searches, and when GUESS is a
+         * win or loss, the window is unbounded from the start.
+         */
+        private int aspire(int depth, int guess) {
+            long delta = ASPIRATION_WINDOW;
+            int alpha = -INFTY, beta = INFTY;
+            if (depth >= ASPIRATION_DEPTH && Math.abs(guess) != INFTY) {
+                alpha = guess - ASPIRATION_WINDOW;
+                beta = guess + ASPIRATION_WINDOW;
+            }
+            while (true) {
+                int score = search(depth, 0, alpha, beta);
+                if (_stopped) {
+                    return score;
+                } else if (score <= alpha && alpha != -INFTY) {
+                    delta *= ASPIRATION_GROWTH;
+                    alpha = (int) Math.max(-INFTY, guess - delta);
+                } else if (score >= beta && beta != INFTY) {
+                    delta *= ASPIRATION_GROWTH;
+                    beta = (int) Math.min(INFTY, guess + delta);
+                } else {
+                    return score;
+                }
+            }
+        }
+
+        /**
+         * Return the value of _position, PLY plies below the root of the
+         * search, for the side to move, searching to DEPTH levels within
+         * the window ALPHA..BETA.  At the root (PLY 0), record the best
+         * move found in _lastFoundMove.  A value <= ALPHA is an upper
+         * bound on the true value and one >= BETA a lower bound; a value
+         * strictly between them is exact.  A side with no move has lost, with
+         * value -INFTY.  Searching at level 0 resolves any captures the side
+         * to move must make (see quiesce) before estimating the value.
+         * _position is walked in place with make and unmake, and is unchanged
+         * on return.  The moves at each level go in _moves[DEPTH].  Once
+         * the time allowed has run out, or the helpers are told to stop,
+         * sets _stopped and returns a meaningless value without setting
+         * _lastFoundMove.
+         *
+         * This is a principal-variation search: the first move is searched
+         * with the full window, and the rest with a null window just above
+         * ALPHA, which only shows that they are no better.  A move that
+         * proves better is searched again with the full window.
+         *
+         * Unless turned off (see setSelective), the search is selective
+         * away from the root in quiet positions (where the side to move
+         * has no capture) with at least SELECTIVE_PIECES pieces on the
+         * board and a choice of move.  Late
+         * moves (from the LMR_MOVES'th on, other than the recorded best
+         * move and killers) at depths of at least LMR_DEPTH are searched
+         * one ply shallower, or two from the LMR_LATE_MOVES'th on, and
+         * again at full depth if they turn out better than ALPHA.  Within
+         * FUTILITY_DEPTH of the leaves, outside the principal variation,
+         * if the static value plus FUTILITY_MARGIN per remaining level is
+         * no more than ALPHA, only the first move is searched: the others
+         * are taken to be no better.  Since they are not searched, the
+         * value returned is then no less than that optimistic estimate,
+         * and is not recorded in the transposition table, where it would
+         * pass for a proven bound.
+         *
+         * Positions below the root that the game's tablebases cover get the
+         * exact value they give (see TABLEBASE_WIN) without searching.
+         *
+         * Results are recorded in _table, as bounds on the value for the side
+         * to move.  Where a recorded result for a search at least as deep
+         * settles the value, or puts it outside ALPHA..BETA, it is returned
+         * without searching (except at the root, which must find a move).
+         *
+         * Moves are tried in the order given by orderKey, best first: the
+         * recorded best move (at the root, the previous iteration's choice),
+         * then the longest captures, then killer moves and moves that have
+         * often caused cutoffs.
+         */
+        private int search(int depth, int ply, int alpha, int beta) {
+            boolean root = ply == 0;
+            if (visit()) {
+                return 0;
+            }
+            BitBoard board = _position;
+            if (!board.hasMove()) {
+                return -INFTY;
+            }
+            int known = root ? Tablebase.UNKNOWN : tablebaseScore(board);
+            if (known != Tablebase.UNKNOWN) {
+                return known;
+            } else if (depth == 0) {
+                return quiesce(0, alpha, beta);
+            }
+            int symmetry = board.canonicalSymmetry();
+            long key = board.key(symmetry);
+            long entry = _table.probe(key);
+            if (entry != 0 && !root
+                && TranspositionTable.depth(entry) >= depth) {
+                int score = TranspositionTable.score(entry);
+                switch (TranspositionTable.bound(entry)) {
+                case LOWER:
+                    if (score >= beta) {
+                        return score;
+                    }
+                    break;
+                case UPPER:
+                    if (score <= alpha) {
+                        return score;
+                    }
+                    break;
+                default:
+                    return score;
+                }
+            }
+            long[] moves = _moves[depth];
+            int n = board.moves(moves);
+            long hint = root ? _rootHint
+                : entry == 0 ? 0
+                : BitBoard.transform(TranspositionTable.move(entry), symmetry);
+            int[] keys = _orderKeys[depth];
+            for (int i = 0; i < n; i += 1) {
+                keys[i] = orderKey(moves[i], hint, ply);
+            }
+            boolean selective = _selective && !root && n > 1
+                && !board.jumpPossible()
+                && BitBoard.SQUARES - Integer.bitCount(board.empty())
+                   >= SELECTIVE_PIECES;
+            boolean futile = false;
+            int optimistic = -INFTY;
+            if (selective && depth <= FUTILITY_DEPTH
+                && (long) beta - alpha == 1) {
+                optimistic = staticScore(board) + FUTILITY_MARGIN * depth;
+                futile = optimistic <= alpha;
+            }
+            int alpha0 = alpha;
+            int best = 0, bestScore = -INFTY;
+            for (int i = 0; i < n; i += 1) {
+                if (futile && i > 0) {
+                    break;
+                }
+                selectNext(moves, keys, i, n);
+                int reduction = 0;
+                if (selective && depth >= LMR_DEPTH && i >= LMR_MOVES
+                    && keys[i] < KILLER_KEY) {
+                    reduction = i >= LMR_LATE_MOVES ? 2 : 1;
+                    reduction = Math.min(reduction, depth - 1);
+                }
+                board.make(moves[i]);
+                int score;
+                if (i == 0) {
+                    score = -search(depth - 1, ply + 1, -beta, -alpha);
+                } else {
+                    score = -search(depth - 1 - reduction, ply + 1,
+                                    -alpha - 1, -alpha);
+                    if (reduction > 0 && score > alpha) {
+                        score = -search(depth - 1, ply + 1,
+                                        -alpha - 1, -alpha);
+                    }
+                    if (score > alpha && score < beta) {
+                        score = -search(depth - 1, ply + 1, -beta, -alpha);
+                    }
+                }
+                board.unmake();
+                if (_stopped) {
+                    return 0;
+                }
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                    if (score > alpha) {
+                        alpha = score;
+                        if (alpha >= beta) {
+                            recordCutoff(moves[i], ply, depth);
+                            break;
+                        }
+                    }
+                }
+            }
+            if (root) {
+                _lastFoundMove = moves[best];
+            }
+            if (futile && n > 1 && bestScore < beta) {
+                return Math.max(bestScore, optimistic);
+            }
+            int bound = EXACT;
+            if (bestScore <= alpha0) {
+                bound = UPPER;
+            } else if (bestScore >= beta) {
+                bound = LOWER;
+            }
+            _table.store(key, BitBoard.transform(moves[best], symmetry),
+                         depth, bound, bestScore);
+            return bestScore;
+        }
+
+        /**
+         * Return the value of _position for the side to move, within the
+         * window ALPHA..BETA (as for search), once all pending captures are
+         * resolved.  This is the search at depth 0, LEVEL plies into the
+         * captures.  Since capturing is compulsory, the side to move cannot
+         * "stand pat" on the static value while it has a capture, so all
+         * captures are searched, longest first; only a position without one
+         * is quiet and gets its static value (or -INFTY, if the side to move
+         * has no move at all).  Each capture removes a piece, so the search
+         * ends.  Positions after a capture that the tablebases cover get
+         * their value from them.  The captures at each level go in
+         * _captures[LEVEL].
+         */
+        private int quiesce(int level, int alpha, int beta) {
+            BitBoard board = _position;
+            boolean quiet = !board.jumpPossible();
+            if (quiet && !board.hasMove()) {
                 return -INFTY;
-            } else {
-                return INFTY;
             }
+            int known = level == 0 ? Tablebase.UNKNOWN : tablebaseScore(board);
+            if (known != Tablebase.UNKNOWN) {
+                return known;
+            } else if (quiet) {
+                return staticScore(board);
+            }
+            long[] moves = _captures[level];
+            int[] keys = _captureKeys[level];
+            int n = board.moves(moves);
+            for (int i = 0; i < n; i += 1) {
+                keys[i] = Integer.bitCount(BitBoard.captured(moves[i]));
+            }
+            int bestScore = -INFTY;
+            for (int i = 0; i < n; i += 1) {
+                selectNext(moves, keys, i, n);
+                board.make(moves[i]);
+                int score = visit() ? 0 : -quiesce(level + 1, -beta, -alpha);
+                board.unmake();
+                if (_stopped) {
+                    return 0;
+                }
+                if (score > bestScore) {
+                    bestScore = score;
+                    if (score > alpha) {
+                        alpha = score;
+                        if (alpha >= beta) {
+                            break;
+                        }
+                    }
+                }
+            }
+            return bestScore;
         }
-        int whites = 0;
-        int blacks = 0;
-        for (PieceColor piece : board.getContents()) {
-            if (piece == WHITE) {
-                whites += 1;
+
+        /**
+         * Count a visit to a position and return true iff the search is to
+         * stop, because it has run out of time or been told to.
+         */
+        private boolean visit() {
+            if (_stopped) {
+                return true;
+            }
+            _nodes += 1;
+            if (_nodes % CLOCK_INTERVAL == 0
+                && (_abort || System.nanoTime() > _deadline)) {
+                _stopped = true;
             }
-            if (piece == BLACK) {
-                blacks += 1;
+            return _stopped;
+        }
+
+        /**
+         * Return the key by which to order the encoded move MV at PLY plies
+         * below the root, where HINT is the move an earlier search found
+         * best (or 0).  Moves with larger keys are tried first.  A position
+         * has either only captures or only steps, since capturing is
+         * compulsory, so killers and history mostly order steps.
+         */
+        private int orderKey(long mv, long hint, int ply) {
+            int history = _history[BitBoard.from(mv)][BitBoard.to(mv)];
+            int captured = Integer.bitCount(BitBoard.captured(mv));
+            if (mv == hint) {
+                return HINT_KEY;
+            } else if (captured > 0) {
+                return CAPTURE_KEY * captured + history;
+            } else if (mv == _killers[ply][0]) {
+                return KILLER_KEY + 1;
+            } else if (mv == _killers[ply][1]) {
+                return KILLER_KEY;
             }
+            return history;
         }
-        return whites - blacks;
+
+        /**
+         * Record that the encoded move MV caused a cutoff in a search to
+         * DEPTH, PLY plies below the root.
+         */
+        private void recordCutoff(long mv, int ply, int depth) {
+            int from = BitBoard.from(mv), to = BitBoard.to(mv);
+            _history[from][to] += depth * depth;
+            if (_history[from][to] >= HISTORY_LIMIT) {
+                ageHistory();
+            }
+            if (BitBoard.captured(mv) == 0 && _killers[ply][0] != mv) {
+                _killers[ply][1] = _killers[ply][0];
+                _killers[ply][0] = mv;
+            }
+        }
+
+        /**
+         * Halve all history scores, so that recent cutoffs count for more.
+         */
+        private void ageHistory() {
+            for (int[] row : _history) {
+                for (int k = 0; k < row.length; k += 1) {
+                    row[k] /= 2;
+                }
+            }
+        }
+
+        /**
+         * Return the value of BOARD for the side to move according to the
+         * tablebases (see TABLEBASE_WIN), or Tablebase.UNKNOWN if they do
+         * not cover it.
+         */
+        private int tablebaseScore(BitBoard board) {
+            if (BitBoard.SQUARES - Integer.bitCount(board.empty())
+                > _tablebase.maxPieces()) {
+                return Tablebase.UNKNOWN;
+            }
+            int value = _tablebase.probe(board);
+            if (value == Tablebase.UNKNOWN) {
+                return value;
+            }
+            return Tablebase.score(value, TABLEBASE_WIN);
+        }
+
+        /**
+         * Return a heuristic value of BOARD, which is not a finished game,
+         * for the side to move.
+         */
+        private int staticScore(BitBoard board) {
+            return _evaluation.score(board);
+        }
+
+        /**
+         * The position being searched.
+         */
+        private BitBoard _position;
+
+        /**
+         * The tablebases consulted by the search.
+         */
+        private Tablebase _tablebase;
+
+        /**
+         * Buffers for the moves at each remaining search depth, so that the
+         * search allocates nothing.
+         */
+        private final long[][] _moves =
+            new long[MAX_DEPTH + 1][BitBoard.MAX_MOVES];
+
+        /**
+         * Ordering keys for the moves in _moves, level by level.
+         */
+        private final int[][] _orderKeys =
+            new int[MAX_DEPTH + 1][BitBoard.MAX_MOVES];
+
+        /**
+         * Buffers for the captures at each level of quiescence search.  Each
+         * capture removes a piece, so there are fewer levels than squares.
+         */
+        private final long[][] _captures =
+            new long[BitBoard.SQUARES][BitBoard.MAX_MOVES];
+
+        /**
+         * Ordering keys for the captures in _captures, level by level.
+         */
+        private final int[][] _captureKeys =
+            new int[BitBoard.SQUARES][BitBoard.MAX_MOVES];
+
+        /**
+         * Two recent quiet moves that caused cutoffs at each ply below the
+         * root, most recent first.
+         */
+        private final long[][] _killers = new long[MAX_DEPTH + 1][2];
+
+        /**
+         * For each starting and final square, a score that grows with the
+         * number and depth of the cutoffs caused by moves between them.
+         */
+        private final int[][] _history =
+            new int[BitBoard.SQUARES][BitBoard.SQUARES];
+
+        /**
+         * The move to try first at the root: the choice of the previous
+         * iteration.
+         */
+        private long _rootHint;
+
+        /**
+         * The move, in the compact form of BitBoard.encode, found by the
+         * last search from the root.
+         */
+        private long _lastFoundMove;
+
+        /**
+         * Number of positions visited by the current search.
+         */
+        private long _nodes;
+
+        /**
+         * True iff the current search has run out of time or been told
+         * to stop.
+         */
+        private boolean _stopped;
+
+        /**
+         * My number among the searchers.
+         */
+        private final int _id;
     }
+
+    /**
+     * Results of earlier searches, kept from move to move, and shared by
+     * all threads.
+     */
+    private TranspositionTable _table;
+
+    /**
+     * My searchers, one for each thread; the first is the main one.
+     */
+    private final ArrayList<Searcher> _searchers = new ArrayList<>();
+
+    /**
+     * The legal moves at the root of the search.
+     */
+    private final long[] _rootMoves = new long[BitBoard.MAX_MOVES];
+
+    /**
+     * The evaluation of positions at the leaves of the search.
+     */
+    private Evaluation _evaluation = Evaluation.DEFAULT;
+
+    /**
+     * The deepest search to try.
+     */
+    private int _depthLimit = MAX_DEPTH;
+
+    /**
+     * True iff my searches are selective (see setSelective).
+     */
+    private boolean _selective = true;
+
+    /**
+     * The depth of the deepest search completed for the last move.
+     */
+    private int _completedDepth;
+
+    /**
+     * The value for the side to move of the position searched for the
+     * last move, as found by the deepest search completed.
+     */
+    private int _score;
+
+    /**
+     * The thread pondering on my opponent's time, or null if none.
+     */
+    private Thread _ponderer;
+
+    /**
+     * The position last pondered on, once pondering is over, or null.
+     */
+    private BitBoard _pondered;
+
+    /**
+     * The best move found by the last pondering.
+     */
+    private long _ponderMove;
+
+    /**
+     * The depth and value reached by the last pondering.
+     */
+    private int _ponderDepth, _ponderScore;
+
+    /**
+     * The value of System.nanoTime() at which the current search must
+     * stop.
+     */
+    private long _deadline;
+
+    /**
+     * True once the main searcher has finished with the current move,
+     * telling the helpers to stop, or once pondering is to stop.
+     */
+    private volatile boolean _abort;
+
     /** True iff dumb is true. */
     private boolean _dumb;
 }
@@ -0,0 +1,119 @@
+package qirkat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static qirkat.TranspositionTable.EXACT;
+import static qirkat.TranspositionTable.LOWER;
+import static qirkat.TranspositionTable.UPPER;
+
+/**
+ * Tests of the AI's search.
+ *
+ * @author Joshua Yurtsever
+ */
+public class AITest {
+
+    /** Return a new AI playing White in a game of its own. */
+    private static AI newAI() {
+        Game game = new Game(new Board(), null, new TextReporter());
+        return new AI(game, PieceColor.WHITE, false);
+    }
+
+    /** Return COUNT quiet positions with a choice of step and at least
+     *  8 pieces, reached by random play seeded by SEED. */
+    private static List<BitBoard> quietPositions(int count, long seed) {
+        Random random = new Random(seed);
+        long[] moves = new long[BitBoard.MAX_MOVES];
+        List<BitBoard> result = new ArrayList<>();
+        while (result.size() < count) {
+            BitBoard b = new Board().position();
+            for (int ply = random.nextInt(16); ply > 0; ply -= 1) {
+                int n = b.moves(moves);
+                if (n == 0) {
+                    break;
+                }
+                b.play(moves[random.nextInt(n)]);
+            }
+            if (!b.jumpPossible() && b.moves(moves) > 1
+                && BitBoard.SQUARES - Integer.bitCount(b.empty()) >= 8) {
+                result.add(b);
+            }
+        }
+        return result;
+    }
+
+    /** Positions, as for Board.setPieces, in which searching wins
+     *  material, with the sides to move. */
+    private static final String[] TACTICAL = {
+        "-w--w wwb-w ----- b--bb b-b-b",
+        "-w--w ww-ww -w-w- -w-bb ---b-",
+        "wwwww -w-w- b--b- --bbb -b-bb",
+        "w---w ----w ---bb b-b-b --bbb",
+        "ww--w --www bb-w- -bbbb --bbb",
+    };
+    /** See TACTICAL. */
+    private static final PieceColor[] TACTICAL_SIDES = {
+        PieceColor.BLACK, PieceColor.BLACK, PieceColor.WHITE,
+        PieceColor.BLACK, PieceColor.BLACK,
+    };
+
+    /** Return the move found in the position SPEC with SIDE to move by
+     *  a search to DEPTH, selective iff SELECTIVE. */
+    private static Move bestMove(String spec, PieceColor side, int depth,
+                                 boolean selective) {
+        Board board = new Board();
+        Game game = new Game(board, null, new TextReporter());
+        game.doTime(new String[] { "100000" });
+        board.setPieces(spec, side);
+        AI ai = new AI(game, side, false);
+        ai.setDepthLimit(depth);
+        ai.setSelective(selective);
+        return ai.findMove();
+    }
+
+    @Test
+    public void testSelectiveFindsFullWidthMove() {
+        for (int i = 0; i < TACTICAL.length; i += 1) {
+            assertEquals(bestMove(TACTICAL[i], TACTICAL_SIDES[i], 6, false),
+                         bestMove(TACTICAL[i], TACTICAL_SIDES[i], 6, true));
+        }
+    }
+
+    @Test
+    public void testFutilityStoresOnlySoundBounds() {
+        for (BitBoard position : quietPositions(40, 19)) {
+            BitBoard scored = new BitBoard(position);
+            scored.setSquareValues(Evaluation.DEFAULT.squareValues());
+            int alpha = Evaluation.DEFAULT.score(scored)
+                + 2 * Evaluation.PIECE_VALUE;
+            AI pruned = newAI();
+            pruned.searchBelowRoot(position, 1, alpha, alpha + 1);
+            int full = newAI().searchBelowRoot(position, 1,
+                                               -Integer.MAX_VALUE,
+                                               Integer.MAX_VALUE);
+            long entry = pruned.tableEntry(position);
+            if (entry == 0 || TranspositionTable.depth(entry) < 1) {
+                continue;
+            }
+            int score = TranspositionTable.score(entry);
+            switch (TranspositionTable.bound(entry)) {
+            case UPPER:
+                assertTrue(full <= score);
+                break;
+            case LOWER:
+                assertTrue(full >= score);
+                break;
+            case EXACT:
+                assertEquals(full, score);
+                break;
+            default:
+                fail("bad bound");
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package qirkat;
+
+import java.util.Arrays;
+
+/**
+ * A fixed benchmark for the AI's search.  Searches each of a fixed set of
+ * positions to a fixed depth, with a fresh AI for each, and reports the
+ * move chosen, the positions visited, and the time taken.  Node counts
+ * for a given depth are repeatable, so they measure changes to pruning
+ * and move ordering independently of the speed of the machine.
+ *
+ * Given several thread counts, runs the benchmark with each and reports
+ * how the search scales: nodes per second, and the time taken to reach
+ * the depth compared with the first thread count, after an unreported
+ * run to warm up the JIT compiler.  With more than one thread, node
+ * counts vary from run to run.
+ *
+ * With -full, the search is not selective (see AI.setSelective), so that
+ * the moves chosen and the nodes visited can be compared with those of
+ * the selective search.
+ *
+ * Usage: java qirkat.Bench [-full] [DEPTH [THREADS...]]
+ *
+ * @author Joshua Yurtsever
+ */
+final class Bench {
+
+    /**
+     * Depth searched unless given on the command line.
+     */
+    static final int DEFAULT_DEPTH = 12;
+
+    /**
+     * The positions searched are those after each multiple of PLY_STEP
+     * plies of GAME (from testing/test06.inp), or the first position after
+     * that with a choice of move.
+     */
+    static final int PLY_STEP = 4;
+
+    /**
+     * The moves of the game from which the positions are taken.
+     */
+    static final String[] GAME = {
+        "c2-c3", "c4-c2", "c1-c3", "a3-c1", "c3-a3", "b4-b3", "a3-c3",
+        "d4-b2", "a2-c2", "c1-c3", "d3-b3", "e5-d4", "e3-e5-c3", "d5-e5",
+        "c3-c4", "c5-c3-a3", "d2-e3", "b5-b4", "e3-e4", "e5-e3", "e2-e4",
+        "a3-b3", "e4-e5", "b4-a3", "b1-c1", "a5-b4", "e1-e2", "b3-c3",
+        "e2-e3", "b4-b3", "d1-e1", "a4-b4", "e3-d4", "c3-d3", "d4-d2",
+        "b3-c3", "d2-e2", "b4-b3", "a1-b1", "a3-a2", "c1-d1", "b3-a3",
+        "b1-c1", "a2-a1", "e2-e3", "c3-b2", "e3-d4", "a3-a2", "c1-a3",
+        "a2-a4", "d4-e4", "a4-b4", "d1-d2", "b4-b3", "d2-e3", "b3-b2",
+        "e1-e2", "b2-c1", "e3-d3"
+    };
+
+    /**
+     * Not instantiable.
+     */
+    private Bench() {
+    }
+
+    /**
+     * Run the benchmark, to the depth given by ARGS[0], if present, with
+     * each number of threads given by the remaining ARGS (1 by default),
+     * after an optional -full (see the class comment).
+     */
+    public static void main(String[] args) {
+        boolean selective = args.length == 0 || !args[0].equals("-full");
+        if (!selective) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        int depth = DEFAULT_DEPTH;
+        int[] threads = { 1 };
+        try {
+            if (args.length > 0) {
+                depth = Integer.parseInt(args[0]);
+            }
+            if (args.length > 1) {
+                threads = new int[args.length - 1];
+                for (int i = 1; i < args.length; i += 1) {
+                    threads[i - 1] = Integer.parseInt(args[i]);
+                }
+            }
+        } catch (NumberFormatException excp) {
+            usage();
+        }
+
+        if (threads.length == 1) {
+            run(depth, threads[0], selective, true);
+            return;
+        }
+        run(depth, threads[0], selective, false);
+        System.out.printf("%7s %12s %8s %12s %8s%n",
+                          "threads", "nodes", "msec", "nodes/sec",
+                          "speedup");
+        long baseTime = 0;
+        for (int n : threads) {
+            long[] result = run(depth, n, selective, false);
+            long nodes = result[0], time = Math.max(1, result[1]);
+            if (baseTime == 0) {
+                baseTime = time;
+            }
+            System.out.printf("%7d %12d %8d %12d %8.2f%n",
+                              n, nodes, time, nodes * 1000 / time,
+                              (double) baseTime / time);
+        }
+    }
+
+    /**
+     * Search the benchmark positions to DEPTH with THREADS threads,
+     * selectively iff SELECTIVE, printing the result for each position
+     * and the totals iff VERBOSE.  Returns the total nodes searched and
+     * the total time in milliseconds.
+     */
+    static long[] run(int depth, int threads, boolean selective,
+                      boolean verbose) {
+        Board board = new Board();
+        Game game = new Game(board, (prompt) -> null, new TextReporter());
+        game.doTime(new String[] { "100000" });
+        game.doThreads(new String[] { Integer.toString(threads) });
+        long totalNodes, totalTime;
+        totalNodes = totalTime = 0;
+        if (verbose) {
+            System.out.printf("%4s  %-12s %5s %12s %8s%n",
+                              "ply", "move", "depth", "nodes", "msec");
+        }
+        boolean due = false;
+        for (int ply = 0; ply <= GAME.length; ply += 1) {
+            due |= ply % PLY_STEP == 0;
+            if (due && board.getMoves().size() > 1) {
+                due = false;
+                AI ai = new AI(game, board.whoseMove(), false);
+                ai.setDepthLimit(depth);
+                ai.setSelective(selective);
+                long start = System.nanoTime();
+                Move move = ai.findMove();
+                long time = (System.nanoTime() - start) / 1000000;
+                if (verbose) {
+                    System.out.printf("%4d  %-12s %5d %12d %8d%n",
+                                      ply, move, ai.completedDepth(),
+                                      ai.nodes(), time);
+                }
+                totalNodes += ai.nodes();
+                totalTime += time;
+            }
+            if (ply < GAME.length) {
+                board.makeMove(Move.parseMove(GAME[ply]));
+            }
+        }
+        if (verbose) {
+            System.out.printf("Total: %d nodes in %d msec (%d nodes/sec)%n",
+                              totalNodes, totalTime,
+                              totalNodes * 1000 / Math.max(1, totalTime));
+        }
+        return new long[] { totalNodes, totalTime };
+    }
+
+    /**
+     * Print a usage message and exit.
+     */
+    private static void usage() {
+        System.err.println("Usage: java qirkat.Bench [-full] "
+                           + "[DEPTH [THREADS...]]");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,1193 @@
+package qirkat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static qirkat.Move.MAX_INDEX;
+import static qirkat.Move.SIDE;
+import static qirkat.PieceColor.*;
+
+/**
+ * The engine core of a Qirkat position.  Each side is kept as a 25-bit
+ * mask in which bit K is set iff the square with linearized index K holds
+ * one of that side's pieces.  The horizontal-move restrictions that Board
+ * used to keep as an array of Moves are kept the same way: bit K of
+ * _noLeft (_noRight) is set iff a piece on square K may not make a
+ * non-capturing move to the left (right).  A restriction belongs to the
+ * piece it was placed on: it goes when the piece moves or is captured,
+ * so that empty squares are never restricted and a piece that later
+ * lands on the square is free to move either way.
+ *
+ * All of the board geometry (edges, the diagonals that exist only on
+ * even-numbered squares, the forward-only rule and the back-rank rule) is
+ * precomputed into per-square and per-direction masks, so that questions
+ * such as "can any piece of this side capture?" take a handful of shifts
+ * and masks for the whole side at once.
+ *
+ * Every position also carries a 64-bit Zobrist key covering the pieces,
+ * the side to move and the restrictions, kept up to date by each change
+ * so that it costs nothing to read.  A search may also give a position a
+ * table of values for pieces on each square (see setSquareValues), whose
+ * total is kept up to date in the same way.
+ *
+ * The rules are unchanged by two symmetries of the board: reflection
+ * from left to right (MIRROR), and rotation through half a turn with the
+ * colors of the pieces and the side to move exchanged (COLOR_SWAP).  A
+ * reflection or rotation preserves the parity of every square's index,
+ * so the diagonals go where diagonals are.  With their combination and
+ * the identity, they make four symmetries, each its own inverse.  Besides
+ * its own key, a position keeps the key of its image under each
+ * symmetry, so that the least of them, canonicalKey(), is as cheap to
+ * read as key().  It is the same for all the images of a position, and
+ * canonicalSymmetry() maps the position, and its moves, to and from the
+ * image with that key: the representative under which tables store it.
+ *
+ * The squares from which each side can capture or step are computed at
+ * most once per position, when first asked for, and kept until the
+ * position changes.  make() saves them with the rest of the undo record,
+ * so after unmake() they are known again without being recomputed.  On a
+ * board this small, the squares near a move are most of the board, and
+ * recomputing a whole side with a few shifts costs no more than
+ * patching the squares one by one.
+ *
+ * @author Joshua Yurtsever
+ */
+final class BitBoard {
+
+    /**
+     * Number of squares on the board.
+     */
+    static final int SQUARES = MAX_INDEX + 1;
+
+    /**
+     * The mask containing every square.
+     */
+    static final int ALL = (1 << SQUARES) - 1;
+
+    /**
+     * The eight directions as differences of linearized indices, in the
+     * order in which Board has always scanned for captures.
+     */
+    static final int[] DIRECTIONS = { -6, -5, -4, -1, 1, 4, 5, 6 };
+
+    /**
+     * An upper bound on the number of legal moves in any position, as
+     * listed by moves().
+     */
+    static final int MAX_MOVES = 256;
+
+    /**
+     * Number of bits in a square index within an encoded move.
+     */
+    private static final int SQUARE_BITS = 5;
+
+    /**
+     * Mask for one square index within an encoded move.
+     */
+    private static final int SQUARE_MASK = (1 << SQUARE_BITS) - 1;
+
+    /**
+     * The symmetries of the board (see the class comment): the
+     * identity, reflection from left to right, rotation through half a
+     * turn with the colors exchanged, and both together, which
+     * reflects the board from top to bottom and exchanges the colors.
+     */
+    static final int IDENTITY = 0, MIRROR = 1, COLOR_SWAP = 2,
+        MIRROR_SWAP = 3;
+
+    /**
+     * Number of symmetries.
+     */
+    static final int SYMMETRIES = 4;
+
+    /**
+     * Row and column deltas of the corresponding DIRECTIONS.
+     */
+    private static final int[]
+        DROW = { -1, -1, -1, 0, 0, 1, 1, 1 },
+        DCOL = { -1, 0, 1, -1, 1, -1, 0, 1 };
+
+    /**
+     * A new position with no pieces on it and White to move.
+     */
+    BitBoard() {
+        _side = WHITE;
+        computeKeys();
+    }
+
+    /**
+     * A copy of B.
+     */
+    BitBoard(BitBoard b) {
+        copy(b);
+    }
+
+    /**
+     * Copy the position B into me, discarding any moves I could have
+     * unmade.
+     */
+    void copy(BitBoard b) {
+        _white = b._white;
+        _black = b._black;
+        _noLeft = b._noLeft;
+        _noRight = b._noRight;
+        _side = b._side;
+        System.arraycopy(b._keys, 0, _keys, 0, SYMMETRIES);
+        _squareValues = b._squareValues;
+        _squareScore = b._squareScore;
+        _known = b._known;
+        System.arraycopy(b._canJump, 0, _canJump, 0, _canJump.length);
+        System.arraycopy(b._canStep, 0, _canStep, 0, _canStep.length);
+        _ply = 0;
+    }
+
+    /**
+     * Set me to the position with WHITE and BLACK as the masks of the
+     * two sides' pieces, RESTRICTIONS as packed by restrictions(), and
+     * SIDE to move, discarding any moves I could have unmade.
+     * Restrictions on empty squares are dropped.
+     */
+    void setPosition(int white, int black, long restrictions,
+                     PieceColor side) {
+        _white = white;
+        _black = black;
+        _noLeft = (int) restrictions & (white | black);
+        _noRight = (int) (restrictions >>> SQUARES) & (white | black);
+        _side = side;
+        computeKeys();
+        _squareScore = computeSquareScore();
+        _known = 0;
+        _ply = 0;
+    }
+
+    /**
+     * Return my pieces and side to move as a packed board (see
+     * PackedPosition).  restrictions() gives the rest of the position.
+     */
+    long packed() {
+        return PackedPosition.pack(_white, _black, _side);
+    }
+
+    /**
+     * Set me to the position with packed board SQUARES and packed
+     * RESTRICTIONS, as for setPosition.
+     */
+    void setPacked(long squares, long restrictions) {
+        setPosition(PackedPosition.white(squares),
+                    PackedPosition.black(squares), restrictions,
+                    PackedPosition.whoseMove(squares));
+    }
+
+    /**
+     * Return the Zobrist key of my position: pieces, side to move and
+     * horizontal-move restrictions.  Equal positions have equal keys.
+     */
+    long key() {
+        return _keys[IDENTITY];
+    }
+
+    /**
+     * Return the key of the image of my position under symmetry
+     * SYMMETRY (see the class comment).
+     */
+    long key(int symmetry) {
+        return _keys[symmetry];
+    }
+
+    /**
+     * Return the least of the keys of the images of my position under
+     * the symmetries, which is the same for all of them.
+     */
+    long canonicalKey() {
+        return _keys[canonicalSymmetry()];
+    }
+
+    /**
+     * Return the symmetry whose image of my position has the key
+     * canonicalKey(): the first such, if there are several.
+     */
+    int canonicalSymmetry() {
+        int best = IDENTITY;
+        for (int s = 1; s < SYMMETRIES; s += 1) {
+            if (_keys[s] < _keys[best]) {
+                best = s;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Set me to the image of B under symmetry SYMMETRY, discarding any
+     * moves I could have unmade.
+     */
+    void setImage(BitBoard b, int symmetry) {
+        boolean swap = symmetry >= COLOR_SWAP;
+        int white = transform(b._white, symmetry),
+            black = transform(b._black, symmetry);
+        int noLeft = transform(b._noLeft, symmetry),
+            noRight = transform(b._noRight, symmetry);
+        if (symmetry == MIRROR || symmetry == COLOR_SWAP) {
+            int t = noLeft;
+            noLeft = noRight;
+            noRight = t;
+        }
+        setPosition(swap ? black : white, swap ? white : black,
+                    noLeft | ((long) noRight << SQUARES),
+                    swap ? b._side.opposite() : b._side);
+    }
+
+    /**
+     * Return the image of the mask of squares MASK under symmetry
+     * SYMMETRY.
+     */
+    static int transform(int mask, int symmetry) {
+        switch (symmetry) {
+        case MIRROR:
+            return mirror(mask);
+        case COLOR_SWAP:
+            return Integer.reverse(mask) >>> (Integer.SIZE - SQUARES);
+        case MIRROR_SWAP:
+            return mirror(Integer.reverse(mask) >>> (Integer.SIZE - SQUARES));
+        default:
+            return mask;
+        }
+    }
+
+    /**
+     * Return the image of the encoded move MV under symmetry SYMMETRY.
+     * Since each symmetry is its own inverse, this also maps the image
+     * back.
+     */
+    static long transform(long mv, int symmetry) {
+        if (symmetry == IDENTITY) {
+            return mv;
+        }
+        return encode(SQUARE_IMAGES[symmetry][from(mv)],
+                      SQUARE_IMAGES[symmetry][to(mv)],
+                      transform(captured(mv), symmetry));
+    }
+
+    /**
+     * Return the mask of squares MASK reflected from left to right.
+     */
+    private static int mirror(int mask) {
+        int result;
+        result = 0;
+        for (int r = 0; r < SIDE; r += 1) {
+            result |= ROW_MIRROR[(mask >>> (r * SIDE)) & ROW_MASK]
+                << (r * SIDE);
+        }
+        return result;
+    }
+
+    /**
+     * Return true iff B holds exactly the same position as I do.
+     */
+    boolean samePosition(BitBoard b) {
+        return key() == b.key() && _white == b._white && _black == b._black
+            && _noLeft == b._noLeft && _noRight == b._noRight
+            && _side == b._side;
+    }
+
+    /**
+     * Value squares by VALUES, where VALUES[C][K] is the value to color C
+     * (by ordinal) of having a piece on square K, so that squareScore()
+     * gives their total.  VALUES must not change while I use it.  With
+     * VALUES null (the default), squareScore() is always 0.
+     */
+    void setSquareValues(int[][] values) {
+        _squareValues = values;
+        _squareScore = computeSquareScore();
+    }
+
+    /**
+     * Return the total value (see setSquareValues) of White's pieces,
+     * less that of Black's.  It is kept up to date by each change, so
+     * that it costs nothing to read.
+     */
+    int squareScore() {
+        return _squareScore;
+    }
+
+    /**
+     * Return the value to color C of a piece of C on square K, or 0 if C
+     * is EMPTY or no values are set.
+     */
+    private int squareValue(PieceColor c, int k) {
+        if (_squareValues == null || c == EMPTY) {
+            return 0;
+        }
+        return c == WHITE ? _squareValues[c.ordinal()][k]
+            : -_squareValues[c.ordinal()][k];
+    }
+
+    /**
+     * Return the change in squareScore() made by MV, which the side to
+     * move is about to play (or has just retracted).
+     */
+    private int squareGain(long mv) {
+        int[] own = _squareValues[_side.ordinal()],
+            opp = _squareValues[_side.opposite().ordinal()];
+        int gain = own[to(mv)] - own[from(mv)];
+        for (int b = captured(mv); b != 0; b &= b - 1) {
+            gain += opp[Integer.numberOfTrailingZeros(b)];
+        }
+        return _side == WHITE ? gain : -gain;
+    }
+
+    /**
+     * Return squareScore() computed from scratch.
+     */
+    private int computeSquareScore() {
+        int score;
+        score = 0;
+        for (int k = 0; k < SQUARES; k += 1) {
+            score += squareValue(get(k), k);
+        }
+        return score;
+    }
+
+    /**
+     * Return the contents of the square with linearized index K.
+     */
+    PieceColor get(int k) {
+        int bit = 1 << k;
+        if ((_white & bit) != 0) {
+            return WHITE;
+        } else if ((_black & bit) != 0) {
+            return BLACK;
+        } else {
+            return EMPTY;
+        }
+    }
+
+    /**
+     * Set the contents of the square with linearized index K to V,
+     * removing any restriction on K if V is EMPTY.
+     */
+    void set(int k, PieceColor v) {
+        if (v == EMPTY) {
+            clearRestriction(k);
+        }
+        toggleKeys(PIECE_KEYS[get(k).ordinal()], 1 << k);
+        toggleKeys(PIECE_KEYS[v.ordinal()], 1 << k);
+        if (_squareValues != null) {
+            _squareScore += squareValue(v, k) - squareValue(get(k), k);
+        }
+        _known = 0;
+        int bit = 1 << k;
+        _white &= ~bit;
+        _black &= ~bit;
+        if (v == WHITE) {
+            _white |= bit;
+        } else if (v == BLACK) {
+            _black |= bit;
+        }
+    }
+
+    /**
+     * Return the mask of squares occupied by pieces of color C.
+     */
+    int pieces(PieceColor c) {
+        return c == WHITE ? _white : c == BLACK ? _black : empty();
+    }
+
+    /**
+     * Return the mask of empty squares.
+     */
+    int empty() {
+        return ALL & ~(_white | _black);
+    }
+
+    /**
+     * Return the color of the side to move.
+     */
+    PieceColor whoseMove() {
+        return _side;
+    }
+
+    /**
+     * Make C the side to move.
+     */
+    void setWhoseMove(PieceColor c) {
+        if (c != _side) {
+            switchSide();
+        }
+    }
+
+    /**
+     * Give the move to the other side.
+     */
+    void switchSide() {
+        _side = _side.opposite();
+        for (int s = 0; s < SYMMETRIES; s += 1) {
+            _keys[s] ^= SIDE_KEY;
+        }
+    }
+
+    /**
+     * Return true iff a non-capturing move from FROM to the adjacent
+     * square TO is forbidden by the horizontal-move rule.
+     */
+    boolean restricted(int from, int to) {
+        if (to == from - 1) {
+            return (_noLeft & (1 << from)) != 0;
+        } else if (to == from + 1) {
+            return (_noRight & (1 << from)) != 0;
+        }
+        return false;
+    }
+
+    /**
+     * Forbid a piece on square K from moving horizontally back to the
+     * adjacent square TOWARD, replacing any restriction on K.
+     */
+    void restrict(int k, int toward) {
+        int bit = 1 << k;
+        int noLeft = _noLeft & ~bit, noRight = _noRight & ~bit;
+        if (toward == k - 1) {
+            noLeft |= bit;
+        } else if (toward == k + 1) {
+            noRight |= bit;
+        }
+        setRestrictions(noLeft, noRight);
+    }
+
+    /**
+     * Remove any horizontal-move restriction on square K.
+     */
+    void clearRestriction(int k) {
+        setRestrictions(_noLeft & ~(1 << k), _noRight & ~(1 << k));
+    }
+
+    /**
+     * Remove all horizontal-move restrictions.
+     */
+    void clearRestrictions() {
+        setRestrictions(0, 0);
+    }
+
+    /**
+     * Set the masks of squares whose pieces may not move left and right
+     * to NOLEFT and NORIGHT.
+     */
+    private void setRestrictions(int noLeft, int noRight) {
+        toggleKeys(NO_LEFT_KEYS, _noLeft ^ noLeft);
+        toggleKeys(NO_RIGHT_KEYS, _noRight ^ noRight);
+        _noLeft = noLeft;
+        _noRight = noRight;
+        _known = 0;
+    }
+
+    /**
+     * Return the mask of squares to which the piece on K, which must
+     * belong to the side to move, has a legal non-capturing move.
+     * Returns 0 if K does not hold a piece of the side to move.
+     */
+    int stepTargets(int k) {
+        if ((pieces(_side) & (1 << k)) == 0) {
+            return 0;
+        }
+        int result = STEPS[_side.ordinal()][k] & empty();
+        if ((_noLeft & (1 << k)) != 0) {
+            result &= ~(1 << (k - 1));
+        }
+        if ((_noRight & (1 << k)) != 0) {
+            result &= ~(1 << (k + 1));
+        }
+        return result;
+    }
+
+    /**
+     * Return the mask of squares from which a piece of color C could
+     * step to square K if K were empty, ignoring restrictions.
+     */
+    static int stepOrigins(PieceColor c, int k) {
+        return STEP_ORIGINS[c.ordinal()][k];
+    }
+
+    /**
+     * Return the mask of squares on which a piece of color C has a legal
+     * non-capturing move, ignoring whose move it is.
+     */
+    int steppers(PieceColor c) {
+        int i = c.ordinal();
+        if ((_known & (1 << i)) == 0) {
+            refresh(c);
+        }
+        return _canStep[i];
+    }
+
+    /**
+     * Return the mask of squares on which a piece of color C can make
+     * a capture, ignoring whose move it is.
+     */
+    int jumpers(PieceColor c) {
+        int i = c.ordinal();
+        if ((_known & (1 << i)) == 0) {
+            refresh(c);
+        }
+        return _canJump[i];
+    }
+
+    /**
+     * Compute the squares from which pieces of color C can step and
+     * capture in the current position.
+     */
+    private void refresh(PieceColor c) {
+        int i = c.ordinal();
+        _canStep[i] = computeSteppers(c);
+        _canJump[i] = computeJumpers(c);
+        _known |= 1 << i;
+    }
+
+    /**
+     * Return steppers(C) computed from scratch.
+     */
+    private int computeSteppers(PieceColor c) {
+        int own = pieces(c) & STEP_SOURCES[c.ordinal()];
+        int free = empty();
+        int result;
+        result = 0;
+        for (int i : COLOR_DIRECTIONS[c.ordinal()]) {
+            int d = DIRECTIONS[i];
+            int src = own & STEP_FROM[i];
+            if (d == -1) {
+                src &= ~_noLeft;
+            } else if (d == 1) {
+                src &= ~_noRight;
+            }
+            result |= shift(shift(src, d) & free, -d);
+        }
+        return result;
+    }
+
+    /**
+     * Return jumpers(C) computed from scratch.
+     */
+    private int computeJumpers(PieceColor c) {
+        int own = pieces(c), opp = pieces(c.opposite()), free = empty();
+        int result;
+        result = 0;
+        for (int i = 0; i < DIRECTIONS.length; i += 1) {
+            int d = DIRECTIONS[i];
+            int over = shift(own & JUMP_FROM[i], d) & opp;
+            result |= shift(shift(over, d) & free, -2 * d);
+        }
+        return result;
+    }
+
+    /**
+     * Return the mask of landing squares of single captures by the piece
+     * on square K, whatever its color.  Returns 0 for an empty square.
+     */
+    int jumpTargets(int k) {
+        PieceColor c = get(k);
+        if (c == EMPTY) {
+            return 0;
+        }
+        int opp = pieces(c.opposite()), free = empty();
+        int result;
+        result = 0;
+        for (int i = 0; i < DIRECTIONS.length; i += 1) {
+            if ((JUMP_FROM[i] & (1 << k)) == 0) {
+                continue;
+            }
+            int d = DIRECTIONS[i];
+            if ((opp & (1 << (k + d))) != 0
+                && (free & (1 << (k + 2 * d))) != 0) {
+                result |= 1 << (k + 2 * d);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the mask of squares holding pieces of color C that the
+     * other side could capture with a single jump, ignoring whose move
+     * it is.
+     */
+    int exposed(PieceColor c) {
+        int own = pieces(c.opposite()), opp = pieces(c), free = empty();
+        int result;
+        result = 0;
+        for (int i = 0; i < DIRECTIONS.length; i += 1) {
+            int d = DIRECTIONS[i];
+            int over = shift(own & JUMP_FROM[i], d) & opp;
+            result |= shift(shift(over, d) & free, -d);
+        }
+        return result;
+    }
+
+    /**
+     * Return true iff the side to move can capture.
+     */
+    boolean jumpPossible() {
+        return jumpers(_side) != 0;
+    }
+
+    /**
+     * Return true iff square K holds a piece of the side to move that
+     * can capture.
+     */
+    boolean jumpPossible(int k) {
+        return (jumpers(_side) & (1 << k)) != 0;
+    }
+
+    /**
+     * Return true iff square K holds a piece of the side to move that
+     * has a legal non-capturing move (not considering whether a capture
+     * is available elsewhere).
+     */
+    boolean movePossible(int k) {
+        return (steppers(_side) & (1 << k)) != 0;
+    }
+
+    /**
+     * Return true iff the side to move has any legal move.
+     */
+    boolean hasMove() {
+        return (jumpers(_side) | steppers(_side)) != 0;
+    }
+
+    /**
+     * Store the encoded legal moves of the side to move into BUF,
+     * starting at index 0, and return how many there are.  The moves are
+     * in the order of Board.getMoves, except that captures with the same
+     * start, end and captured pieces, which differ only in the order of
+     * the legs and so lead to the same position, are listed only once.
+     * BUF must have room for MAX_MOVES moves.
+     */
+    int moves(long[] buf) {
+        int n;
+        n = 0;
+        if (jumpers(_side) != 0) {
+            for (int b = jumpers(_side); b != 0; b &= b - 1) {
+                int k = Integer.numberOfTrailingZeros(b);
+                n = jumps(buf, n, k, k, 0);
+            }
+        } else {
+            int[] order = STEP_ORDER[_side.ordinal()];
+            for (int b = steppers(_side); b != 0; b &= b - 1) {
+                int k = Integer.numberOfTrailingZeros(b);
+                int targets = stepTargets(k);
+                for (int d : order) {
+                    if ((targets & (1 << (k + d))) != 0) {
+                        buf[n] = encode(k, k + d, 0);
+                        n += 1;
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Add to BUF, whose first N entries are in use, every maximal
+     * capture by the side to move that started on FROM, has so far
+     * captured the pieces in CAPTURED, and has reached K.  Return the
+     * new number of entries in use.  The legs are played out on my masks
+     * and undone again, without touching my key.
+     */
+    private int jumps(long[] buf, int n, int from, int k, int captured) {
+        int targets = jumpTargets(k);
+        if (targets == 0) {
+            if (captured != 0) {
+                long mv = encode(from, k, captured);
+                for (int i = n - 1; i >= 0 && from(buf[i]) == from; i -= 1) {
+                    if (buf[i] == mv) {
+                        return n;
+                    }
+                }
+                assert n < MAX_MOVES;
+                buf[n] = mv;
+                n += 1;
+            }
+            return n;
+        }
+        boolean white = _side == WHITE;
+        for (int i = 0; i < DIRECTIONS.length; i += 1) {
+            int to = jumpLanding(k, i);
+            if (to < 0 || (targets & (1 << to)) == 0) {
+                continue;
+            }
+            int own = (1 << k) | (1 << to), over = 1 << (k + DIRECTIONS[i]);
+            if (white) {
+                _white ^= own;
+                _black ^= over;
+            } else {
+                _black ^= own;
+                _white ^= over;
+            }
+            n = jumps(buf, n, from, to, captured | over);
+            if (white) {
+                _white ^= own;
+                _black ^= over;
+            } else {
+                _black ^= own;
+                _white ^= over;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Move the piece on FROM over the piece on OVER to the empty square
+     * TO, removing the captured piece.  This is one leg of a capture:
+     * it neither changes the side to move nor touches any horizontal-move
+     * restriction (only the first leg's origin loses its restriction,
+     * which is the caller's business).
+     */
+    void jump(int from, int over, int to) {
+        set(to, get(from));
+        set(from, EMPTY);
+        set(over, EMPTY);
+    }
+
+    /**
+     * Undo jump(FROM, OVER, TO): move the piece on TO back to FROM and
+     * restore the opposing piece it captured on OVER.
+     */
+    void unjump(int from, int over, int to) {
+        PieceColor mover = get(to);
+        set(from, mover);
+        set(over, mover.opposite());
+        set(to, EMPTY);
+    }
+
+    /**
+     * Return the square on which a capture from square K in the direction
+     * DIRECTIONS[I] lands, or -1 if that capture would leave the board
+     * or use a diagonal that does not exist.
+     */
+    static int jumpLanding(int k, int i) {
+        if ((JUMP_FROM[i] & (1 << k)) == 0) {
+            return -1;
+        }
+        return k + 2 * DIRECTIONS[i];
+    }
+
+    /**
+     * Return the compact encoding of the move of the piece on FROM to
+     * TO, capturing the pieces on the squares in the mask CAPTURED (0 for
+     * a non-capturing move).  A capture may end where it started, in
+     * which case FROM == TO.
+     */
+    static long encode(int from, int to, int captured) {
+        return from | (to << SQUARE_BITS)
+            | ((long) captured << (2 * SQUARE_BITS));
+    }
+
+    /**
+     * Return the starting square of the encoded move MV.
+     */
+    static int from(long mv) {
+        return (int) mv & SQUARE_MASK;
+    }
+
+    /**
+     * Return the final square of the encoded move MV.
+     */
+    static int to(long mv) {
+        return (int) (mv >>> SQUARE_BITS) & SQUARE_MASK;
+    }
+
+    /**
+     * Return the mask of squares captured by the encoded move MV.
+     */
+    static int captured(long mv) {
+        return (int) (mv >>> (2 * SQUARE_BITS)) & ALL;
+    }
+
+    /**
+     * Return my horizontal-move restrictions packed into a long, as
+     * needed to retract a move.
+     */
+    long restrictions() {
+        return _noLeft | ((long) _noRight << SQUARES);
+    }
+
+    /**
+     * Play the legal encoded move MV and give the move to the other side,
+     * keeping no record of it.
+     */
+    void play(long mv) {
+        if (_squareValues != null) {
+            _squareScore += squareGain(mv);
+        }
+        int from = from(mv), to = to(mv), captured = captured(mv);
+        int own = (1 << from) ^ (1 << to);
+        if (_side == WHITE) {
+            _white ^= own;
+            _black &= ~captured;
+        } else {
+            _black ^= own;
+            _white &= ~captured;
+        }
+        toggleKeys(PIECE_KEYS[_side.ordinal()], own);
+        toggleKeys(PIECE_KEYS[_side.opposite().ordinal()], captured);
+        _known = 0;
+        setRestrictions(_noLeft & ~captured & ~(1 << from),
+                        _noRight & ~captured & ~(1 << from));
+        if (captured == 0 && (to == from - 1 || to == from + 1)) {
+            restrict(to, from);
+        }
+        switchSide();
+    }
+
+    /**
+     * Take back MV, which must be the move that was just played, given
+     * the RESTRICTIONS that were in force before it.
+     */
+    void retract(long mv, long restrictions) {
+        switchSide();
+        int own = (1 << from(mv)) ^ (1 << to(mv)), captured = captured(mv);
+        if (_side == WHITE) {
+            _white ^= own;
+            _black |= captured;
+        } else {
+            _black ^= own;
+            _white |= captured;
+        }
+        toggleKeys(PIECE_KEYS[_side.ordinal()], own);
+        toggleKeys(PIECE_KEYS[_side.opposite().ordinal()], captured);
+        if (_squareValues != null) {
+            _squareScore -= squareGain(mv);
+        }
+        _known = 0;
+        setRestrictions((int) restrictions & ALL,
+                        (int) (restrictions >>> SQUARES));
+    }
+
+    /**
+     * Play the move of the piece on FROM to TO capturing CAPTURED, as
+     * for make(long).
+     */
+    void make(int from, int to, int captured) {
+        make(encode(from, to, captured));
+    }
+
+    /**
+     * Play the legal encoded move MV, recording the previous state so
+     * that unmake() restores it.
+     */
+    void make(long mv) {
+        if (_ply * UNDO_SIZE == _undo.length) {
+            _undo = Arrays.copyOf(_undo, 2 * _undo.length);
+        }
+        int u = _ply * UNDO_SIZE;
+        _undo[u] = mv;
+        _undo[u + 1] = restrictions();
+        _undo[u + 2] = pack(_canJump) | ((long) _known << (2 * SQUARES));
+        _undo[u + 3] = pack(_canStep);
+        _ply += 1;
+        play(mv);
+    }
+
+    /**
+     * Undo the last make() that has not yet been undone.
+     */
+    void unmake() {
+        assert _ply > 0;
+        _ply -= 1;
+        int u = _ply * UNDO_SIZE;
+        retract(_undo[u], _undo[u + 1]);
+        _known = (int) (_undo[u + 2] >>> (2 * SQUARES));
+        unpack(_undo[u + 2], _canJump);
+        unpack(_undo[u + 3], _canStep);
+    }
+
+    /**
+     * Return the white and black entries of the per-color masks MASKS
+     * packed into a long.
+     */
+    private static long pack(int[] masks) {
+        return masks[WHITE.ordinal()]
+            | ((long) masks[BLACK.ordinal()] << SQUARES);
+    }
+
+    /**
+     * Set the white and black entries of MASKS from PACKED, as packed
+     * by pack.
+     */
+    private static void unpack(long packed, int[] masks) {
+        masks[WHITE.ordinal()] = (int) packed & ALL;
+        masks[BLACK.ordinal()] = (int) (packed >>> SQUARES) & ALL;
+    }
+
+    /**
+     * Return the number of make()s not yet undone.
+     */
+    int ply() {
+        return _ply;
+    }
+
+    /**
+     * Return the step directions (differences of linearized indices)
+     * open to color C, in the order in which Board lists the moves.
+     */
+    static int[] stepOrder(PieceColor c) {
+        return STEP_ORDER[c.ordinal()];
+    }
+
+    /**
+     * Return X shifted so that the bit for square K moves to square
+     * K + D.
+     */
+    static int shift(int x, int d) {
+        return d >= 0 ? (x << d) & ALL : x >>> -d;
+    }
+
+    /**
+     * Compute my keys from scratch.
+     */
+    private void computeKeys() {
+        for (int s = 0; s < SYMMETRIES; s += 1) {
+            boolean black = (_side == BLACK) != (s >= COLOR_SWAP);
+            _keys[s] = black ? SIDE_KEY : 0;
+        }
+        toggleKeys(PIECE_KEYS[WHITE.ordinal()], _white);
+        toggleKeys(PIECE_KEYS[BLACK.ordinal()], _black);
+        toggleKeys(NO_LEFT_KEYS, _noLeft);
+        toggleKeys(NO_RIGHT_KEYS, _noRight);
+    }
+
+    /**
+     * Exclusive-or into each of my keys the entries of TABLE (laid out
+     * as described for PIECE_KEYS) for the squares in the mask
+     * SQUARESET.  All four keys are updated in one pass over the
+     * squares.
+     */
+    private void toggleKeys(long[] table, int squareSet) {
+        for (int b = squareSet; b != 0; b &= b - 1) {
+            int i = Integer.numberOfTrailingZeros(b) * SYMMETRIES;
+            _keys[IDENTITY] ^= table[i + IDENTITY];
+            _keys[MIRROR] ^= table[i + MIRROR];
+            _keys[COLOR_SWAP] ^= table[i + COLOR_SWAP];
+            _keys[MIRROR_SWAP] ^= table[i + MIRROR_SWAP];
+        }
+    }
+
+    /**
+     * Return the mask of the squares in row R (0-based).
+     */
+    private static int rowMask(int r) {
+        return ((1 << SIDE) - 1) << (r * SIDE);
+    }
+
+    /**
+     * Return true iff the step of direction index I from square K stays
+     * on the board for N squares, and uses a diagonal only if K is even.
+     */
+    private static boolean onBoard(int k, int i, int n) {
+        int r = k / SIDE + n * DROW[i], c = k % SIDE + n * DCOL[i];
+        boolean diagonal = DROW[i] != 0 && DCOL[i] != 0;
+        return r >= 0 && r < SIDE && c >= 0 && c < SIDE
+            && (!diagonal || k % 2 == 0);
+    }
+
+    /**
+     * Squares from which a single step in direction I exists.
+     */
+    private static final int[] STEP_FROM = new int[DIRECTIONS.length];
+
+    /**
+     * Squares from which a capture in direction I exists.
+     */
+    private static final int[] JUMP_FROM = new int[DIRECTIONS.length];
+
+    /**
+     * Indices into DIRECTIONS of the steps allowed to each color,
+     * indexed by ordinal.
+     */
+    private static final int[][] COLOR_DIRECTIONS = {
+        {}, { 3, 4, 5, 6, 7 }, { 0, 1, 2, 3, 4 }
+    };
+
+    /**
+     * The step directions of each color in Board's listing order:
+     * left, right, straight ahead, ahead-left, ahead-right.
+     */
+    private static final int[][] STEP_ORDER = {
+        {}, { -1, 1, SIDE, SIDE - 1, SIDE + 1 },
+        { -1, 1, -SIDE, -SIDE - 1, -SIDE + 1 }
+    };
+
+    /**
+     * Squares from which each color (by ordinal) may make non-capturing
+     * moves: anywhere but its opponent's home row.
+     */
+    private static final int[] STEP_SOURCES = {
+        0, ALL & ~rowMask(SIDE - 1), ALL & ~rowMask(0)
+    };
+
+    /**
+     * STEPS[C][K] is the mask of squares to which a piece of the color
+     * with ordinal C on square K could step if they were empty.
+     */
+    private static final int[][] STEPS = new int[3][SQUARES];
+
+    /**
+     * STEP_ORIGINS[C][K] is the mask of squares from which a piece of
+     * the color with ordinal C could step to square K.
+     */
+    private static final int[][] STEP_ORIGINS = new int[3][SQUARES];
+
+    /**
+     * Seed of the Zobrist keys.  The keys are fixed so that keys saved
+     * to a file mean the same thing in every run.
+     */
+    private static final long KEY_SEED = 0x51726b6174L;
+
+    /**
+     * PIECE_KEYS[C][K * SYMMETRIES + S] is the Zobrist key, in the image
+     * under symmetry S, of a piece of the color with ordinal C on square
+     * K.  Empty squares contribute nothing.  The entries for IDENTITY are
+     * the keys proper; the others are them rearranged.
+     */
+    private static final long[][] PIECE_KEYS =
+        new long[3][SQUARES * SYMMETRIES];
+
+    /**
+     * Zobrist keys of the restrictions on each square, laid out as for
+     * PIECE_KEYS.
+     */
+    private static final long[]
+        NO_LEFT_KEYS = new long[SQUARES * SYMMETRIES],
+        NO_RIGHT_KEYS = new long[SQUARES * SYMMETRIES];
+
+    /**
+     * SQUARE_IMAGES[S][K] is the image of square K under symmetry S.
+     */
+    private static final int[][] SQUARE_IMAGES = new int[SYMMETRIES][SQUARES];
+
+    /**
+     * Mask of the squares of one row, and the reflection of each set of
+     * squares within a row.
+     */
+    private static final int ROW_MASK = (1 << SIDE) - 1;
+    /** See ROW_MASK. */
+    private static final int[] ROW_MIRROR = new int[1 << SIDE];
+
+    /**
+     * Zobrist key of having Black to move.
+     */
+    private static final long SIDE_KEY;
+
+    static {
+        Random keyGen = new Random(KEY_SEED);
+        for (int k = 0; k < SQUARES * SYMMETRIES; k += SYMMETRIES) {
+            PIECE_KEYS[WHITE.ordinal()][k] = keyGen.nextLong();
+            PIECE_KEYS[BLACK.ordinal()][k] = keyGen.nextLong();
+            NO_LEFT_KEYS[k] = keyGen.nextLong();
+            NO_RIGHT_KEYS[k] = keyGen.nextLong();
+        }
+        SIDE_KEY = keyGen.nextLong();
+        for (int row = 0; row <= ROW_MASK; row += 1) {
+            ROW_MIRROR[row] = Integer.reverse(row) >>> (Integer.SIZE - SIDE);
+        }
+        for (int s = 0; s < SYMMETRIES; s += 1) {
+            boolean swap = s >= COLOR_SWAP,
+                turn = s == MIRROR || s == COLOR_SWAP;
+            for (int k = 0; k < SQUARES; k += 1) {
+                int image = Integer.numberOfTrailingZeros(transform(1 << k, s));
+                int i = k * SYMMETRIES + s, j = image * SYMMETRIES;
+                SQUARE_IMAGES[s][k] = image;
+                for (PieceColor c : new PieceColor[] { WHITE, BLACK }) {
+                    PieceColor d = swap ? c.opposite() : c;
+                    PIECE_KEYS[c.ordinal()][i] = PIECE_KEYS[d.ordinal()][j];
+                }
+                NO_LEFT_KEYS[i] = (turn ? NO_RIGHT_KEYS : NO_LEFT_KEYS)[j];
+                NO_RIGHT_KEYS[i] = (turn ? NO_LEFT_KEYS : NO_RIGHT_KEYS)[j];
+            }
+        }
+        for (int k = 0; k < SQUARES; k += 1) {
+            for (int i = 0; i < DIRECTIONS.length; i += 1) {
+                if (onBoard(k, i, 1)) {
+                    STEP_FROM[i] |= 1 << k;
+                }
+                if (onBoard(k, i, 2)) {
+                    JUMP_FROM[i] |= 1 << k;
+                }
+            }
+        }
+        for (int c = 1; c < STEPS.length; c += 1) {
+            for (int k = 0; k < SQUARES; k += 1) {
+                if ((STEP_SOURCES[c] & (1 << k)) == 0) {
+                    continue;
+                }
+                for (int i : COLOR_DIRECTIONS[c]) {
+                    if ((STEP_FROM[i] & (1 << k)) != 0) {
+                        STEPS[c][k] |= 1 << (k + DIRECTIONS[i]);
+                        STEP_ORIGINS[c][k + DIRECTIONS[i]] |= 1 << k;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The pieces of each side.
+     */
+    private int _white, _black;
+
+    /**
+     * Squares whose pieces may not move left or right, respectively.
+     */
+    private int _noLeft, _noRight;
+
+    /**
+     * The side to move.
+     */
+    private PieceColor _side;
+
+    /**
+     * The Zobrist keys of the images of the current position under each
+     * symmetry, _keys[IDENTITY] being its own.
+     */
+    private final long[] _keys = new long[SYMMETRIES];
+
+    /**
+     * The square values set by setSquareValues, or null, and the
+     * resulting squareScore().
+     */
+    private int[][] _squareValues;
+    /** See _squareValues. */
+    private int _squareScore;
+
+    /**
+     * Bit C is set iff _canJump[C] and _canStep[C] are up to date for
+     * the color with ordinal C.
+     */
+    private int _known;
+
+    /**
+     * The squares from which each color, by ordinal, can capture, when
+     * known.
+     */
+    private final int[] _canJump = new int[3];
+
+    /**
+     * The squares from which each color, by ordinal, can step, when
+     * known.
+     */
+    private final int[] _canStep = new int[3];
+
+    /**
+     * Number of longs in one undo record: the encoded move, the
+     * restrictions in force before it, and the packed _canJump (with
+     * _known) and _canStep before it.
+     */
+    private static final int UNDO_SIZE = 4;
+
+    /**
+     * Undo records of the moves made by make(), oldest first.  Copies of
+     * a BitBoard start with an empty record.
+     */
+    private long[] _undo = new long[UNDO_SIZE * 2 * SQUARES];
+
+    /**
+     * Number of undo records in use.
+     */
+    private int _ply;
+}
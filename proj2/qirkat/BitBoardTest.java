@@ -0,0 +1,297 @@
+package qirkat;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static qirkat.PieceColor.*;
+
+/**
+ * Tests of the BitBoard engine core.
+ *
+ * @author Joshua Yurtsever
+ */
+public class BitBoardTest {
+
+    /** Return a BitBoard set up from SPEC (as for Board.setPieces)
+     *  with SIDE to move. */
+    static BitBoard setUp(String spec, PieceColor side) {
+        BitBoard b = new BitBoard();
+        spec = spec.replaceAll("\\s", "");
+        for (int k = 0; k < spec.length(); k += 1) {
+            char c = spec.charAt(k);
+            b.set(k, c == 'w' ? WHITE : c == 'b' ? BLACK : EMPTY);
+        }
+        b.setWhoseMove(side);
+        return b;
+    }
+
+    /** Return the mask with bits set for SQUARES, given as names. */
+    static int mask(String... squares) {
+        int result = 0;
+        for (String sq : squares) {
+            result |= 1 << Move.index(sq.charAt(0), sq.charAt(1));
+        }
+        return result;
+    }
+
+    @Test
+    public void testInitialPosition() {
+        BitBoard b = setUp("wwwww wwwww bb-ww bbbbb bbbbb", WHITE);
+        assertFalse(b.jumpPossible());
+        assertEquals(mask("b2", "c2", "d2", "d3"), b.steppers(WHITE));
+        assertEquals(mask("b4", "c4", "d4", "b3"), b.steppers(BLACK));
+        assertTrue(b.hasMove());
+    }
+
+    @Test
+    public void testDiagonalsOnlyFromEvenSquares() {
+        BitBoard b = setUp("----- -w--- ----- ----- -----", WHITE);
+        assertEquals(mask("a2", "c2", "a3", "b3", "c3"), b.stepTargets(6));
+        b = setUp("----- --w-- ----- ----- -----", WHITE);
+        assertEquals(mask("b2", "d2", "c3"), b.stepTargets(7));
+        b = setUp("--w-- ----- ----- ----- -----", WHITE);
+        assertEquals(mask("b1", "d1", "b2", "c2", "d2"), b.stepTargets(2));
+    }
+
+    @Test
+    public void testBackRank() {
+        BitBoard b = setUp("----- ----- ----- ----- --w--", WHITE);
+        assertEquals(0, b.steppers(WHITE));
+        assertFalse(b.hasMove());
+        b = setUp("--b-- ----- ----- ----- -----", BLACK);
+        assertFalse(b.hasMove());
+    }
+
+    @Test
+    public void testJumps() {
+        BitBoard b = setUp("----- -w--- -bbb- ----- -----", WHITE);
+        assertEquals(mask("b2"), b.jumpers(WHITE));
+        assertEquals(mask("b4", "d4"), b.jumpTargets(6));
+        assertTrue(b.jumpPossible());
+        assertEquals(mask("b3", "c3"), b.jumpers(BLACK));
+        b = setUp("----- --w-- --b-- ---b- -----", WHITE);
+        assertEquals(mask("c4"), b.jumpTargets(7));
+        b.jump(7, 12, 17);
+        assertEquals(mask("c4"), b.pieces(WHITE));
+        assertEquals(mask("d4"), b.pieces(BLACK));
+        assertEquals(mask("e4"), b.jumpTargets(17));
+    }
+
+    @Test
+    public void testRestrictions() {
+        BitBoard b = setUp("--w-- ----- ----- --b-- -----", WHITE);
+        b.make(2, 1, 0);
+        assertTrue(b.restricted(1, 2));
+        assertFalse(b.restricted(1, 0));
+        b.make(17, 12, 0);
+        assertEquals(mask("a1", "b2"), b.stepTargets(1));
+        b.make(1, 6, 0);
+        assertFalse(b.restricted(1, 2));
+        assertFalse(b.restricted(6, 7));
+        b.unmake();
+        b.unmake();
+        assertTrue(b.restricted(1, 2));
+        b.unmake();
+        assertEquals(mask("c1"), b.pieces(WHITE));
+        assertFalse(b.restricted(1, 2));
+        assertEquals(WHITE, b.whoseMove());
+    }
+
+    @Test
+    public void testCapturedRestrictionsDropped() {
+        BitBoard b = setUp("w---- --b-- ----- ----- -----", BLACK);
+        b.make(7, 6, 0);
+        assertTrue(b.restricted(6, 7));
+        b.make(0, 12, mask("b2"));
+        assertEquals(0, b.restrictions());
+        b.unmake();
+        assertTrue(b.restricted(6, 7));
+        b.setPosition(b.pieces(WHITE), 0, b.restrictions(), WHITE);
+        assertEquals(0, b.restrictions());
+    }
+
+    @Test
+    public void testMakeUnmakeCapture() {
+        BitBoard b = setUp("----- -w--- -bbb- ----- -----", WHITE);
+        b.make(6, 18, mask("b3", "c3"));
+        assertEquals(mask("d4"), b.pieces(WHITE));
+        assertEquals(mask("d3"), b.pieces(BLACK));
+        assertEquals(BLACK, b.whoseMove());
+        b.unmake();
+        assertEquals(mask("b2"), b.pieces(WHITE));
+        assertEquals(mask("b3", "c3", "d3"), b.pieces(BLACK));
+        assertEquals(WHITE, b.whoseMove());
+    }
+
+    @Test
+    public void testCaptureEndingAtStart() {
+        BitBoard b = setUp("----- -b-b- --w-- -b-b- -----", WHITE);
+        int blacks = b.pieces(BLACK);
+        b.make(12, 12, blacks);
+        assertEquals(mask("c3"), b.pieces(WHITE));
+        assertEquals(0, b.pieces(BLACK));
+        b.unmake();
+        assertEquals(mask("c3"), b.pieces(WHITE));
+        assertEquals(blacks, b.pieces(BLACK));
+    }
+
+    @Test
+    public void testKeys() {
+        BitBoard b = setUp("--w-- -w--- -bbb- --b-- -----", WHITE);
+        long start = b.key();
+        b.make(6, 18, mask("b3", "c3"));
+        b.make(17, 16, 0);
+        b.make(2, 1, 0);
+        BitBoard fresh = new BitBoard();
+        fresh.setPosition(b.pieces(WHITE), b.pieces(BLACK),
+                          b.restrictions(), b.whoseMove());
+        assertEquals(fresh.key(), b.key());
+        assertTrue(fresh.samePosition(b));
+        b.unmake();
+        assertNotEquals(fresh.key(), b.key());
+        b.unmake();
+        b.unmake();
+        assertEquals(start, b.key());
+        b.switchSide();
+        assertNotEquals(start, b.key());
+        b.switchSide();
+        b.restrict(2, 3);
+        assertNotEquals(start, b.key());
+        b.clearRestrictions();
+        assertEquals(start, b.key());
+    }
+
+    @Test
+    public void testSymmetries() {
+        BitBoard b = setUp("w---- --b-- ----- ----- -----", BLACK);
+        b.make(7, 6, 0);
+        BitBoard image = new BitBoard();
+        image.setImage(b, BitBoard.MIRROR);
+        assertEquals(mask("e1"), image.pieces(WHITE));
+        assertEquals(mask("d2"), image.pieces(BLACK));
+        assertTrue(image.restricted(8, 7));
+        image.setImage(b, BitBoard.COLOR_SWAP);
+        assertEquals(mask("d4"), image.pieces(WHITE));
+        assertEquals(mask("e5"), image.pieces(BLACK));
+        assertEquals(BLACK, image.whoseMove());
+        assertTrue(image.restricted(18, 17));
+        assertEquals(mask("a1", "e2"),
+                     BitBoard.transform(mask("a5", "e4"),
+                                        BitBoard.MIRROR_SWAP));
+
+        long[] buf = new long[BitBoard.MAX_MOVES],
+            imageBuf = new long[BitBoard.MAX_MOVES];
+        b = setUp("wwwww wwwww bb-ww bbbbb bbbbb", WHITE);
+        Random rand = new Random(25);
+        for (int n = b.moves(buf); n > 0; n = b.moves(buf)) {
+            for (int s = 0; s < BitBoard.SYMMETRIES; s += 1) {
+                image.setImage(b, s);
+                assertEquals(b.key(s), image.key());
+                assertEquals(b.canonicalKey(), image.canonicalKey());
+                assertEquals(n, image.moves(imageBuf));
+                Set<Long> moves = new HashSet<>();
+                for (int i = 0; i < n; i += 1) {
+                    moves.add(imageBuf[i]);
+                    assertEquals(buf[i], BitBoard.transform(
+                                 BitBoard.transform(buf[i], s), s));
+                }
+                for (int i = 0; i < n; i += 1) {
+                    assertTrue(moves.contains(
+                                   BitBoard.transform(buf[i], s)));
+                }
+            }
+            b.make(buf[rand.nextInt(n)]);
+        }
+        BitBoard other = new BitBoard();
+        other.setImage(b, b.canonicalSymmetry());
+        assertEquals(b.canonicalKey(), other.key());
+    }
+
+    @Test
+    public void testMoves() {
+        long[] buf = new long[BitBoard.MAX_MOVES];
+        BitBoard b = setUp("wwwww wwwww bb-ww bbbbb bbbbb", WHITE);
+        assertEquals(4, b.moves(buf));
+        assertEquals(BitBoard.encode(6, 12, 0), buf[0]);
+        assertEquals(BitBoard.encode(13, 12, 0), buf[3]);
+        b = setUp("----- -w--- -bbb- ----- -----", WHITE);
+        assertEquals(2, b.moves(buf));
+        assertEquals(BitBoard.encode(6, 18, mask("b3", "c3", "d3")), buf[0]);
+        assertEquals(BitBoard.encode(6, 8, mask("c3", "d3")), buf[1]);
+        b = setUp("wb--- b-b-- -b--- ----- -----", WHITE);
+        long key = b.key();
+        assertEquals(1, b.moves(buf));
+        assertEquals(BitBoard.encode(0, 0, b.pieces(BLACK)), buf[0]);
+        assertEquals(key, b.key());
+    }
+
+    /** Assert that B's capturing and stepping squares are those of a
+     *  fresh copy of its position. */
+    private static void assertMoversCurrent(BitBoard b) {
+        BitBoard fresh = new BitBoard();
+        fresh.setPosition(b.pieces(WHITE), b.pieces(BLACK),
+                          b.restrictions(), b.whoseMove());
+        for (PieceColor c : new PieceColor[] { WHITE, BLACK }) {
+            assertEquals(fresh.jumpers(c), b.jumpers(c));
+            assertEquals(fresh.steppers(c), b.steppers(c));
+        }
+    }
+
+    @Test
+    public void testMoverTracking() {
+        long[] buf = new long[BitBoard.MAX_MOVES];
+        BitBoard b = setUp("wwwww wwwww bb-ww bbbbb bbbbb", WHITE);
+        Random rand = new Random(61);
+        for (int game = 0; game < 20; game += 1) {
+            while (b.hasMove() && b.ply() < 60) {
+                assertMoversCurrent(b);
+                int n = b.moves(buf);
+                b.make(buf[rand.nextInt(n)]);
+            }
+            assertMoversCurrent(b);
+            while (b.ply() > 0) {
+                b.unmake();
+                assertMoversCurrent(b);
+            }
+        }
+    }
+
+    @Test
+    public void testExposed() {
+        BitBoard b = setUp("----- -w--- -bbb- ----- -----", WHITE);
+        assertEquals(mask("b3", "c3"), b.exposed(BLACK));
+        assertEquals(mask("b2"), b.exposed(WHITE));
+        b = setUp("wwwww wwwww bb-ww bbbbb bbbbb", WHITE);
+        assertEquals(0, b.exposed(WHITE) | b.exposed(BLACK));
+    }
+
+    @Test
+    public void testSquareScoreTracking() {
+        int[][] values = Evaluation.DEFAULT.squareValues();
+        long[] buf = new long[BitBoard.MAX_MOVES];
+        BitBoard b = setUp("wwwww wwwww bb-ww bbbbb bbbbb", WHITE);
+        assertEquals(0, b.squareScore());
+        b.setSquareValues(values);
+        assertEquals(0, b.squareScore());
+        Random rand = new Random(62);
+        for (int game = 0; game < 20; game += 1) {
+            while (b.hasMove() && b.ply() < 60) {
+                int n = b.moves(buf);
+                b.make(buf[rand.nextInt(n)]);
+                BitBoard fresh = new BitBoard(b);
+                fresh.setSquareValues(values);
+                assertEquals(fresh.squareScore(), b.squareScore());
+            }
+            while (b.ply() > 0) {
+                b.unmake();
+            }
+            assertEquals(0, b.squareScore());
+        }
+        b.set(Move.index('a', '1'), EMPTY);
+        assertEquals(-values[WHITE.ordinal()][0], b.squareScore());
+    }
+}
@@ -1,11 +1,10 @@
 package qirkat;
 
 import java.util.ArrayList;
-import java.util.EmptyStackException;
 import java.util.Formatter;
-import java.util.Observable;
-import java.util.Observer;
-import java.util.Stack;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static qirkat.GameException.error;
 
@@ -23,9 +22,15 @@ import static qirkat.PieceColor.*;
  *
  * Moves on this board are denoted by Moves.
  *
+ * Each change to a Board (a move, an undo, a set-up) is published to its
+ * BoardListeners as an immutable BoardSnapshot.  A Board is not
+ * synchronized: it belongs to the thread that last changed it (at first,
+ * the one that made it), and readers on other threads must work from
+ * snapshots rather than from the Board or its constantView().
+ *
  * @author Joshua Yurtsever
  */
-class Board extends Observable {
+class Board {
     /**
      * Stores the setup version of a board.
      */
@@ -35,40 +40,98 @@ class Board extends Observable {
      * A new, cleared board at the start of the game.
      */
     Board() {
-        _history = new Stack<>();
+        this(new BitBoard(), new History());
         clear();
-        _history.add(new Board(this));
-
     }
 
     /**
      * A copy of B.
      */
     Board(Board b) {
+        this(new BitBoard(), new History());
         internalCopy(b);
     }
 
+    /**
+     * A Board whose position is CORE and whose game history is HISTORY.
+     */
+    private Board(BitBoard core, History history) {
+        _core = core;
+        _history = history;
+    }
+
     /**
      * Return a constant view of me (allows any access method, but no
-     * method that modifies it).
+     * method that modifies it).  The view reads my position directly,
+     * without copying or locking, so it may only be used on the thread
+     * that owns me (see the class comment); its accessors assert as
+     * much.  Other threads should use snapshot().
      */
     Board constantView() {
         return this.new ConstantBoard();
     }
 
     /**
-     * Returns true iff the boards have the same contest and the same
-     * whose move.
+     * Arrange for LISTENER to be told of every later change to me.
+     */
+    void addListener(BoardListener listener) {
+        _listeners.add(listener);
+    }
+
+    /**
+     * Stop telling LISTENER about changes to me.
+     */
+    void removeListener(BoardListener listener) {
+        _listeners.remove(listener);
+    }
+
+    /**
+     * Return the snapshot of my state as of my last change.
+     */
+    BoardSnapshot snapshot() {
+        return _snapshot;
+    }
+
+    /**
+     * Record that I have changed, as a result of LASTMOVE if it is not
+     * null, and publish a snapshot of my new state to my listeners.
+     */
+    private void changed(Move lastMove) {
+        _owner = Thread.currentThread();
+        _version += 1;
+        _snapshot = new BoardSnapshot(_version,
+                                      _core.packed(), _core.restrictions(),
+                                      _core.key(), lastMove, _gameOver);
+        for (BoardListener listener : _listeners) {
+            listener.boardChanged(_snapshot);
+        }
+    }
+
+    /**
+     * Returns true iff the boards have the same contents, the same
+     * whose move and the same horizontal-move restrictions.
      */
     @Override
     public boolean equals(Object o) {
-        return o instanceof Board && toString().equals(o.toString())
-                && whoseMove() == ((Board) o).whoseMove()
-                && ((Board) o)._history.equals(_history);
+        return o instanceof Board && _core.samePosition(((Board) o)._core);
     }
+
+    /**
+     * Returns a hash code consistent with equals, taken from the
+     * position's key.  It changes whenever the position does.
+     */
     @Override
     public int hashCode() {
-        return super.hashCode();
+        return (int) (key() ^ (key() >>> 32));
+    }
+
+    /**
+     * Return the 64-bit Zobrist key of the current position, which
+     * covers the contents, whose move and the horizontal-move
+     * restrictions.
+     */
+    long key() {
+        return _core.key();
     }
 
     /**
@@ -76,20 +139,27 @@ class Board extends Observable {
      * positions.
      */
     void clear() {
-        _whoseMove = WHITE;
         _gameOver = false;
-        draws = new Move[MAX_INDEX + 1];
-        setPieces(spec, _whoseMove);
-
-        setChanged();
-        notifyObservers();
+        _core.clearRestrictions();
+        setPieces(spec, WHITE);
     }
 
     /**
-     * Returns my _CONTENTS.
+     * Returns my contents as an array indexed by linearized index.
      */
     public PieceColor[] getContents() {
-        return _contents;
+        PieceColor[] result = new PieceColor[MAX_INDEX + 1];
+        for (int k = 0; k <= MAX_INDEX; k += 1) {
+            result[k] = _core.get(k);
+        }
+        return result;
+    }
+
+    /**
+     * Return the number of pieces of color C on the board.
+     */
+    int pieceCount(PieceColor c) {
+        return Integer.bitCount(_core.pieces(c));
     }
 
     /**
@@ -103,10 +173,8 @@ class Board extends Observable {
      * Copy B into me.
      */
     private void internalCopy(Board b) {
-        _contents = b.getContents().clone();
-        _whoseMove = b.whoseMove();
-        _history = b._history;
-        draws = b.draws.clone();
+        _core.copy(b._core);
+        _history.reset(_core);
     }
 
     /**
@@ -125,7 +193,6 @@ class Board extends Observable {
         if (!str.matches("[bw-]{25}")) {
             throw new IllegalArgumentException("bad board description");
         }
-        _contents = new PieceColor[MAX_INDEX + 1];
         for (int k = 0; k < str.length(); k += 1) {
             switch (str.charAt(k)) {
             case '-':
@@ -144,9 +211,40 @@ class Board extends Observable {
             }
         }
 
-        _whoseMove = nextMove;
-        setChanged();
-        notifyObservers();
+        _core.setWhoseMove(nextMove);
+        _history.reset(_core);
+        changed(null);
+    }
+
+    /**
+     * Return my contents and whose move it is as a packed board (see
+     * PackedPosition).
+     */
+    long packed() {
+        return _core.packed();
+    }
+
+    /**
+     * Return my horizontal-move restrictions in packed form (see
+     * PackedPosition).
+     */
+    long packedRestrictions() {
+        return _core.restrictions();
+    }
+
+    /**
+     * Set my contents and whose move it is from the packed board SQUARES
+     * and my horizontal-move restrictions from the packed RESTRICTIONS,
+     * starting a new game history as for setPieces.
+     */
+    void setPacked(long squares, long restrictions) {
+        if (!PackedPosition.isValid(squares)
+            || !PackedPosition.isValidRestrictions(squares, restrictions)) {
+            throw new IllegalArgumentException("bad packed position");
+        }
+        _core.setPacked(squares, restrictions);
+        _history.reset(_core);
+        changed(null);
     }
 
     /**
@@ -174,7 +272,7 @@ class Board extends Observable {
         if (!validSquare(k)) {
             throw error("not valid square");
         }
-        return _contents[k];
+        return _core.get(k);
     }
 
     /**
@@ -191,49 +289,31 @@ class Board extends Observable {
      */
     private void set(int k, PieceColor v) {
         assert validSquare(k);
-        _contents[k] = v;
+        _core.set(k, v);
     }
 
     /**
-     * Return true iff MOV is legal on the current board.
+     * Return true iff MOV is legal on the current board: that is, iff it
+     * is one of the moves listed by getMoves.
      */
     boolean legalMove(Move mov) {
-        if (checkDraw(mov)) {
-            return false;
-        }
-        boolean cond;
-        cond = (get(mov.fromIndex()) == whoseMove());
-        cond = cond && get(mov.toIndex()) == EMPTY;
-        char base = get(mov.fromIndex()) == WHITE ? '1' : '5';
-        if (!mov.isJump() && cond
-                && (mov.row0() - base) * (mov.row0() - base)
-                <= (mov.row1() - base) * (mov.row1() - base)) {
-            if (whoseMove() == WHITE && mov.fromIndex() / 5 == 4) {
-                return false;
-            }
-            if (whoseMove() == BLACK && mov.fromIndex() / 5 == 0) {
-                return false;
-            }
-            int deltaRowSquare = (mov.row1() - mov.row0())
-                    * (mov.row1() - mov.row0());
-            int deltaColSquare = (mov.col1() - mov.col0())
-                    * (mov.col1() - mov.col0());
-            int modulusSqaure = deltaColSquare + deltaRowSquare;
-            if (jumpPossible()) {
-                throw error("invalid move: jump possible");
-            }
-            if (mov.fromIndex() % 2 == 0
-                    && deltaColSquare <= 1 && deltaRowSquare <= 1) {
-                return true;
-            }
-            if (mov.fromIndex() % 2 == 1 && modulusSqaure
-                    < 2 && modulusSqaure > 0) {
-                return true;
-            }
-        } else if (mov.isJump() && cond) {
-            return checkJump(mov, false);
+        return legalMoves().contains(mov);
+    }
+
+    /**
+     * Return the set of legal moves in the current position.  It is
+     * generated when first needed and kept until the position changes,
+     * so validating any number of moves in one position costs one
+     * generation.
+     */
+    private Set<Move> legalMoves() {
+        if (_legalMoves == null || !_legalFor.samePosition(_core)) {
+            ArrayList<Move> moves = new ArrayList<>();
+            addMoves(moves);
+            _legalMoves = new HashSet<>(moves);
+            _legalFor.copy(_core);
         }
-        return false;
+        return _legalMoves;
     }
 
     /**
@@ -244,58 +324,14 @@ class Board extends Observable {
         if (mov.isJump() || (!mov.isLeftMove() && !mov.isRightMove())) {
             return false;
         }
-        if (draws[mov.fromIndex()] != null) {
-            if (mov.equals(draws[mov.fromIndex()])) {
-                return true;
-            }
-        }
-        return false;
+        return _core.restricted(mov.fromIndex(), mov.toIndex());
     }
 
     /**
      * Return TRUE iff there is a legal move from K.
      */
     boolean movePossible(int k) {
-        int dir;
-        if (_contents[k] != whoseMove()) {
-            return false;
-        } else if (whoseMove() == WHITE && k / 5 == 4) {
-            return false;
-        } else if (whoseMove() == BLACK && k / 5 == 0) {
-            return false;
-        }
-        dir = _contents[k] == WHITE ? 1 : -1;
-        int above = k + dir * 5;
-        return checkValidDest(above) || (movePossibleHelper(k, k)
-                || (k % 2 == 0 && movePossibleHelper(k, above)));
-    }
-
-    /**
-     * Return TRUE iff there is a legal move in the row of R from
-     * index O.
-     */
-    private boolean movePossibleHelper(int o, int r) {
-        for (int i = -1; i <= 1; i += 2) {
-            if (o % 5 == 0 && i == -1) {
-                continue;
-            }
-            if (o % 5 == 4 && i == 1) {
-                return false;
-            }
-            if (checkValidDest(r + i) && validSquare(o)) {
-                if (!checkDraw(move(o, r + i))) {
-                    return true;
-                }
-            }
-        }
-        return false;
-    }
-
-    /**
-     * Return TRUE iff there is a legal move at D.
-     */
-    private boolean checkValidDest(int d) {
-        return d < MAX_INDEX + 1 && d >= 0 && _contents[d].equals(EMPTY);
+        return _core.movePossible(k);
     }
 
     /**
@@ -315,23 +351,21 @@ class Board extends Observable {
             System.out.println("242 game over");
             return;
         }
+        addMoves(moves);
+    }
+
+    /**
+     * Add all legal moves from the current position to MOVES, whether or
+     * not the game has been marked over.
+     */
+    private void addMoves(ArrayList<Move> moves) {
         if (jumpPossible()) {
-            for (int k = 0; k <= MAX_INDEX; k += 1) {
-                if (get(k) != whoseMove()) {
-                    continue;
-                }
-                getJumps(moves, k);
+            for (int b = _core.jumpers(whoseMove()); b != 0; b &= b - 1) {
+                getJumps(moves, Integer.numberOfTrailingZeros(b));
             }
         } else {
-            for (int k = 0; k <= MAX_INDEX; k += 1) {
-                if (get(k) != whoseMove()) {
-                    continue;
-                } else if (whoseMove() == WHITE && k / 5 == 4) {
-                    continue;
-                } else if (whoseMove() == BLACK && k / 5 == 0) {
-                    continue;
-                }
-                getMoves(moves, k);
+            for (int b = _core.steppers(whoseMove()); b != 0; b &= b - 1) {
+                getMoves(moves, Integer.numberOfTrailingZeros(b));
             }
         }
     }
@@ -341,47 +375,13 @@ class Board extends Observable {
      * with linearized index K to MOVES.
      */
     public void getMoves(ArrayList<Move> moves, int k) {
-        int dir;
-        if (_contents[k] != whoseMove()) {
+        int targets = _core.stepTargets(k);
+        if (targets == 0) {
             return;
         }
-        dir = whoseMove() == WHITE ? 1 : -1;
-        int above = k + dir * 5;
-        getMovesHelper(moves, k, k);
-        moveAddIf(moves, k, above);
-        if (k % 2 == 0) {
-            getMovesHelper(moves, k, above);
-        }
-    }
-
-    /**
-     * Checks the left and right of position ABOVE if the left or right
-     * exists and is valid then adds to MOVES if move valid from K.
-     */
-    private void getMovesHelper(ArrayList<Move> moves, int k, int above) {
-        for (int i = -1; i <= 1; i += 2) {
-            if (k % 5 == 0 && i == -1) {
-                continue;
-            }
-            if (k % 5 == 4 && i == 1) {
-                break;
-            }
-            moveAddIf(moves, k, above + i);
-        }
-    }
-
-    /**
-     * Checkes if CAND satisfies conditions to be a valid move
-     * from O and adds it to MOVES if it is. Assumes cand is adjacent.
-     */
-    private void moveAddIf(ArrayList<Move> moves, int o, int cand) {
-        if (cand < 0 || cand > MAX_INDEX) {
-            return;
-        }
-        if (_contents[cand] == EMPTY) {
-            Move mv = move(o, cand);
-            if (!checkDraw(mv)) {
-                moves.add(move(o, cand));
+        for (int d : BitBoard.stepOrder(whoseMove())) {
+            if (validSquare(k + d) && (targets & (1 << (k + d))) != 0) {
+                moves.add(move(k, k + d));
             }
         }
     }
@@ -391,131 +391,42 @@ class Board extends Observable {
      * to MOVES.
      */
     public void getJumps(ArrayList<Move> moves, int k) {
-        Board hypot = new Board(this);
-        if (!hypot.get(k).equals(whoseMove())) {
+        if (get(k) != whoseMove()) {
             return;
         }
-        ArrayList<Move> res = getJumpsHelper(k, hypot);
-        if (res != null) {
-            moves.addAll(res);
-        }
-
+        _scratch.copy(_core);
+        getJumps(moves, k, 0);
     }
+
     /**
-     * Takes in K and HYPOT to get jumps recursively.
-     * Returns a list of moves.
+     * Add to MOVES every maximal capture sequence that continues from K
+     * on _scratch, where _jumpPath[0 .. DEPTH-1] holds the squares
+     * already visited.  Each single jump is applied to _scratch before
+     * recursing and reverted afterwards, so _scratch is left unchanged.
      */
-    private ArrayList<Move> getJumpsHelper(int k, Board hypot) {
-        ArrayList<Move> result = new ArrayList<>();
-        boolean changed = false;
-        for (int s = -10; s <= 10; s += 10) {
-            for (int i = -2; i <= 2; i += 2) {
-                int toInd = s + i + k;
-                if ((i == s && s == 0) || !validSquare(toInd)
-                        || (k % 2 == 1 && i * i == 4 && s != 0)) {
-                    continue;
+    private void getJumps(ArrayList<Move> moves, int k, int depth) {
+        _jumpPath[depth] = k;
+        int targets = _scratch.jumpTargets(k);
+        if (targets == 0) {
+            if (depth > 0) {
+                Move mov;
+                mov = null;
+                for (int i = depth; i > 0; i -= 1) {
+                    mov = move(_jumpPath[i - 1], _jumpPath[i], mov);
                 }
-                if (i == 2 && k % 5 >= 3) {
-                    continue;
-                }
-                if (i == -2 && k % 5 <= 1) {
-                    continue;
-                }
-                int jumpInd = k + s / 2 + i / 2;
-                if (hypot.get(jumpInd) == hypot.get(k).opposite()
-                        && hypot.get(toInd) == EMPTY) {
-                    Board branch = new Board(hypot);
-                    branch.set(jumpInd, EMPTY);
-                    branch.set(toInd, branch.get(k));
-                    branch.set(k, EMPTY);
-                    result.addAll(concatTails(move(k, toInd),
-                            getJumpsHelper(toInd, branch)));
-                    changed = true;
-                }
-
+                moves.add(mov);
             }
+            return;
         }
-        if (changed) {
-            return result;
-        }
-        return null;
-
-    }
-    /** Concatonates tails into one move given HEAD, TAILS. Returns
-     * a list of moves.
-     */
-    private ArrayList<Move> concatTails(Move head, ArrayList<Move> tails) {
-        if (tails == null) {
-            ArrayList<Move> res = new ArrayList<>();
-            res.add(head);
-            return res;
-        }
-        for (int i = 0; i < tails.size(); i++) {
-            tails.set(i, move(head, tails.get(i)));
-        }
-        return tails;
-    }
-
-    /**
-     * Return true iff MOV is a valid jump sequence on the current board.
-     * MOV must be a jump or null.  If ALLOWPARTIAL, allow jumps that
-     * could be continued and are valid as far as they go.
-     */
-    boolean checkJump(Move mov, boolean allowPartial) {
-        if (mov == null) {
-            return true;
-        }
-        if (get(mov.fromIndex()) == EMPTY) {
-            return false;
-        }
-        hypo = new Board(this);
-        return checkJumpHelper(mov, allowPartial, hypo);
-    }
-
-    /**
-     * Make one jump MOV given BRD assumes that jump is valid.
-     */
-    private void oneJump(Move mov, Board brd) {
-        brd.set(mov.toIndex(), brd.get(mov.fromIndex()));
-        brd.set(mov.fromIndex(), EMPTY);
-        brd.set(mov.jumpedIndex(), EMPTY);
-    }
-
-    /**
-     * Return true iff MOV is a valid jump sequence on the current board.
-     * MOV must be a jump or null and give HYPOT.
-     * If ALLOWPARTIAL, allow jumps that
-     * could be continued and are valid as far as they go.
-     */
-    private boolean checkJumpHelper(Move mov, boolean allowPartial,
-                                    Board hypot) {
-        if (mov == null) {
-            return true;
-        }
-        if (hypot.get(mov.toIndex()) != EMPTY
-                || hypot.get(mov.fromIndex()) == EMPTY) {
-            return false;
-        }
-        PieceColor color = hypot.get(mov.fromIndex());
-        int rowSq = (mov.row1() - mov.row0())
-                * (mov.row1() - mov.row0());
-        int colSq = (mov.col1() - mov.col0())
-                * (mov.col1() - mov.col0());
-        if ((rowSq == colSq && rowSq == 4) || rowSq + colSq == 4) {
-            int jumped = mov.jumpedIndex();
-            if (hypot.get(jumped) == color.opposite()) {
-                oneJump(mov, hypot);
-                if (mov.jumpTail() == null) {
-                    if (allowPartial) {
-                        return true;
-                    } else {
-                        return !hypot.jumpPossible(mov.toIndex());
-                    }
-                }
-                return checkJumpHelper(mov.jumpTail(), allowPartial, hypot);
+        for (int i = 0; i < BitBoard.DIRECTIONS.length; i += 1) {
+            int to = BitBoard.jumpLanding(k, i);
+            if (to >= 0 && (targets & (1 << to)) != 0) {
+                int over = k + BitBoard.DIRECTIONS[i];
+                _scratch.jump(k, over, to);
+                getJumps(moves, to, depth + 1);
+                _scratch.unjump(k, over, to);
             }
         }
-        return false;
     }
 
     /**
@@ -530,47 +441,14 @@ class Board extends Observable {
      * linearized index K.
      */
     boolean jumpPossible(int k) {
-        if (get(k) != whoseMove()) {
-            return false;
-        }
-        PieceColor color;
-        color = get(k);
-        int to;
-        for (int r = -10; r <= 10; r += 10) {
-            for (int c = -2; c <= 2; c += 2) {
-                to = k + r + c;
-                if (c == 2 && k % 5 >= 3) {
-                    continue;
-                }
-                if (c == -2 && k % 5 <= 1) {
-                    continue;
-                }
-                if (0 <= to && to <= MAX_INDEX && !(r == 0 && c == 0)
-                        && !(r * r == 100 && c * c == 4 && k % 2 == 1)
-                        && get(to) == EMPTY && color != EMPTY) {
-                    int jumped = index((char) ((col(k) + col(to)) / 2),
-                            (char) ((row(k) + row(to)) / 2));
-                    if (get(jumped) == color.opposite()) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+        return _core.jumpPossible(k);
     }
-    /** Return true iff a jump is possible for a piece at position with
-     *  linearized index K. */
 
     /**
      * Return true iff a jump is possible from the current board.
      */
     boolean jumpPossible() {
-        for (int k = 0; k <= MAX_INDEX; k += 1) {
-            if (jumpPossible(k)) {
-                return true;
-            }
-        }
-        return false;
+        return _core.jumpPossible();
     }
 
     /**
@@ -578,7 +456,7 @@ class Board extends Observable {
      * value is arbitrary if gameOver().
      */
     PieceColor whoseMove() {
-        return _whoseMove;
+        return _core.whoseMove();
     }
 
     /**
@@ -601,49 +479,115 @@ class Board extends Observable {
      * Make the Move MOV on this Board, assuming it is legal.
      */
     void makeMove(Move mov) {
-        if (_contents[mov.fromIndex()] != whoseMove()) {
-            throw error("invalid move: %s's move", whoseMove());
-        }
         if (!legalMove(mov)) {
-            throw error("invalid move: enter another");
+            if (get(mov.fromIndex()) != whoseMove()) {
+                throw error("invalid move: wrong side (%s to play)",
+                            whoseMove());
+            } else if (!mov.isJump() && jumpPossible()) {
+                throw error("invalid move: jump required");
+            } else if (mov.isJump()) {
+                throw error("invalid move: not a legal jump");
+            } else {
+                throw error("invalid move: not a legal step");
+            }
         }
+        long mv = encode(mov);
+        long restrictions = _core.restrictions();
+        _core.play(mv);
+        _gameOver = !_core.hasMove();
+        _history.record(mv, restrictions, _core);
+        changed(mov);
+    }
 
-        _history.add(new Board(this));
-        if (draws[mov.fromIndex()] != null) {
-            draws[mov.fromIndex()] = null;
-        }
-        if (!mov.isJump()) {
-            if (jumpPossible(mov.fromIndex())) {
-                throw error("invalid move: jump possible");
-            }
-            _contents[mov.toIndex()] = _contents[mov.fromIndex()];
-            _contents[mov.fromIndex()] = EMPTY;
+    /**
+     * Make MOV, which is assumed to be legal, in search mode: without
+     * validating it, recording it in the game history, or notifying
+     * listeners.  The change is recorded compactly so that unmake()
+     * can restore the previous position in constant time.
+     */
+    void make(Move mov) {
+        _core.make(encode(mov));
+        _gameOver = !_core.hasMove();
+    }
 
-            if (mov.isRightMove() || mov.isLeftMove()) {
-                draws[mov.toIndex()]
-                        = move(mov.toIndex() , mov.fromIndex());
-            }
-        } else {
-            hypo.draws = this.draws;
-            copy(hypo);
-        }
-        switchPlayer();
-        checkGameOver();
-        setChanged();
-        notifyObservers();
+    /**
+     * Undo the last make() not yet undone.  A position from which a move
+     * was made cannot have been over.
+     */
+    void unmake() {
+        _core.unmake();
+        _gameOver = false;
     }
 
     /**
      * Undo the last move, if any.
      */
     void undo() {
-        try {
-            copy(_history.pop());
-            setChanged();
-            notifyObservers();
-        } catch (EmptyStackException exp) {
+        if (!_history.undo(_core)) {
             throw error("Cannot undo anymore");
         }
+        _gameOver = false;
+        changed(null);
+    }
+
+    /**
+     * Return the number of moves made in the current game, that is,
+     * since the last clear() or setPieces().
+     */
+    int movesMade() {
+        return _history.size();
+    }
+
+    /**
+     * Return a new Board holding the position after the first PLY moves
+     * of the current game, where 0 <= PLY <= movesMade().  The new
+     * Board's own game starts at that position.
+     */
+    Board positionAt(int ply) {
+        if (ply < 0 || ply > movesMade()) {
+            throw error("no such position");
+        }
+        Board result = new Board(this);
+        _history.seek(ply, result._core);
+        result._history.reset(result._core);
+        result.checkGameOver();
+        return result;
+    }
+
+    /**
+     * Return a copy of the current position for searching.
+     */
+    BitBoard position() {
+        return new BitBoard(_core);
+    }
+
+    /**
+     * Return the first of my legal moves, in the order of getMoves, whose
+     * compact form (see BitBoard.encode) is MV, or null if there is none.
+     */
+    Move toMove(long mv) {
+        for (Move mov : getMoves()) {
+            if (encode(mov) == mv) {
+                return mov;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return MOV in the compact form used by BitBoard.
+     */
+    private static long encode(Move mov) {
+        int captured;
+        captured = 0;
+        Move last = mov;
+        if (mov.isJump()) {
+            for (Move leg = mov; leg != null; leg = leg.jumpTail()) {
+                captured |= 1 << leg.jumpedIndex();
+                last = leg;
+            }
+        }
+        return BitBoard.encode(mov.fromIndex(), last.toIndex(), captured);
     }
 
     @Override
@@ -658,7 +602,7 @@ class Board extends Observable {
     String toString(boolean legend) {
         Formatter out = new Formatter();
         String[] row;
-        int dim = _contents.length / 5;
+        int dim = SIDE;
         for (int r = dim - 1; r >= 0; r--) {
             if (legend) {
                 row = new String[dim + 1];
@@ -692,45 +636,76 @@ class Board extends Observable {
      * Return true iff there is a move for the current player.
      */
     private boolean isMove() {
-        for (int i = 0; i < _contents.length; i++) {
-            if (movePossible(i) || jumpPossible(i)) {
-                return true;
-            }
-        }
-        return false;
+        return _core.hasMove();
     }
 
-    /**
-     * Stores the hypothetical board.
-     */
-    private Board hypo;
-
     /**
      * Switches player.
      */
     public void switchPlayer() {
-        _whoseMove = whoseMove().opposite();
+        _core.switchSide();
     }
 
     /**
-     * Player that is on move.
+     * Set true when game ends.
      */
-    private PieceColor _whoseMove;
+    private boolean _gameOver;
 
     /**
-     * Set true when game ends.
+     * The position itself: pieces, side to move and horizontal-move
+     * restrictions.
      */
-    private boolean _gameOver;
+    private final BitBoard _core;
+
+    /**
+     * Working position on which getJumps plays out capture sequences.
+     */
+    private final BitBoard _scratch = new BitBoard();
+
+    /**
+     * The squares visited by the capture sequence getJumps is currently
+     * exploring.  No sequence can visit more squares than there are.
+     */
+    private final int[] _jumpPath = new int[MAX_INDEX + 1];
+
+    /**
+     * The legal moves in the position _legalFor, or null if they have
+     * not been generated.
+     */
+    private Set<Move> _legalMoves;
+
+    /**
+     * The position whose legal moves are _legalMoves.
+     */
+    private final BitBoard _legalFor = new BitBoard();
+
+    /**
+     * The moves of the current game on this Board, which no copy of
+     * it shares.
+     */
+    private final History _history;
+
+    /**
+     * The objects to tell about changes to me.  Iterating over it needs
+     * no lock, and it rarely changes.
+     */
+    private final CopyOnWriteArrayList<BoardListener> _listeners =
+        new CopyOnWriteArrayList<>();
+
+    /**
+     * The number of changes published so far.
+     */
+    private long _version;
 
     /**
-     * Contents of the board in a linear fashion.
+     * The thread that last changed me, which alone may read me.
      */
-    private PieceColor[] _contents;
+    private volatile Thread _owner = Thread.currentThread();
 
     /**
-     * Stores the contents of the board's history.
+     * The latest published snapshot of me.
      */
-    private Stack<Board> _history;
+    private volatile BoardSnapshot _snapshot;
 
     /**
      * Convenience value giving values of pieces at each ordinal position.
@@ -741,18 +716,22 @@ class Board extends Observable {
      * Sets GAMEOVER to true if there are no moves.
      */
     public void checkGameOver() {
-        _gameOver = !isMove();
+        boolean over = !isMove();
+        if (over != _gameOver) {
+            _gameOver = over;
+            changed(null);
+        }
     }
 
     /** Sets the variable at index IND of draws to MV.
      */
     public void setDraws(Move mv, int ind) {
-        draws[ind] = mv;
+        if (mv == null) {
+            _core.clearRestriction(ind);
+        } else {
+            _core.restrict(ind, mv.toIndex());
+        }
     }
-    /**
-     * Keeps track of draws.
-     */
-    private Move[] draws;
 
 
     /**
@@ -763,15 +742,129 @@ class Board extends Observable {
     }
 
     /**
-     * A read-only view of a Board.
+     * A read-only view of a Board.  It shares the Board's position and
+     * history rather than copying them, with no synchronization, so it
+     * may be used only on the thread that owns the Board (see the Board
+     * class comment), which its accessors check by assertion.  Only the
+     * working storage used to list and check moves is its own.
      */
-    private class ConstantBoard extends Board implements Observer {
+    private class ConstantBoard extends Board {
         /**
          * A constant view of this Board.
          */
         ConstantBoard() {
-            super(Board.this);
-            Board.this.addObserver(this);
+            super(Board.this._core, Board.this._history);
+        }
+
+        /**
+         * Return true iff the current thread owns the viewed Board.
+         */
+        private boolean owned() {
+            return Thread.currentThread() == Board.this._owner;
+        }
+
+        @Override
+        boolean gameOver() {
+            assert owned();
+            return Board.this.gameOver();
+        }
+
+        @Override
+        PieceColor whoseMove() {
+            assert owned();
+            return super.whoseMove();
+        }
+
+        @Override
+        PieceColor get(int k) {
+            assert owned();
+            return super.get(k);
+        }
+
+        @Override
+        public PieceColor[] getContents() {
+            assert owned();
+            return super.getContents();
+        }
+
+        @Override
+        long key() {
+            assert owned();
+            return super.key();
+        }
+
+        @Override
+        long packed() {
+            assert owned();
+            return super.packed();
+        }
+
+        @Override
+        long packedRestrictions() {
+            assert owned();
+            return super.packedRestrictions();
+        }
+
+        @Override
+        boolean legalMove(Move mov) {
+            assert owned();
+            return super.legalMove(mov);
+        }
+
+        @Override
+        void getMoves(ArrayList<Move> moves) {
+            assert owned();
+            super.getMoves(moves);
+        }
+
+        @Override
+        boolean jumpPossible() {
+            assert owned();
+            return super.jumpPossible();
+        }
+
+        @Override
+        int movesMade() {
+            assert owned();
+            return super.movesMade();
+        }
+
+        @Override
+        Board positionAt(int ply) {
+            assert owned();
+            return super.positionAt(ply);
+        }
+
+        @Override
+        BitBoard position() {
+            assert owned();
+            return super.position();
+        }
+
+        @Override
+        String toString(boolean legend) {
+            assert owned();
+            return super.toString(legend);
+        }
+
+        @Override
+        public void checkGameOver() {
+            assert false;
+        }
+
+        @Override
+        void addListener(BoardListener listener) {
+            Board.this.addListener(listener);
+        }
+
+        @Override
+        void removeListener(BoardListener listener) {
+            Board.this.removeListener(listener);
+        }
+
+        @Override
+        BoardSnapshot snapshot() {
+            return Board.this.snapshot();
         }
 
         @Override
@@ -784,11 +877,31 @@ class Board extends Observable {
             assert false;
         }
 
+        @Override
+        void setPieces(String str, PieceColor nextMove) {
+            assert false;
+        }
+
+        @Override
+        void setPacked(long squares, long restrictions) {
+            assert false;
+        }
+
         @Override
         void makeMove(Move move) {
             assert false;
         }
 
+        @Override
+        void make(Move move) {
+            assert false;
+        }
+
+        @Override
+        void unmake() {
+            assert false;
+        }
+
         /**
          * Undo the last move.
          */
@@ -798,10 +911,13 @@ class Board extends Observable {
         }
 
         @Override
-        public void update(Observable obs, Object arg) {
-            super.copy((Board) obs);
-            setChanged();
-            notifyObservers(arg);
+        public void switchPlayer() {
+            assert false;
+        }
+
+        @Override
+        public void setDraws(Move mv, int ind) {
+            assert false;
         }
     }
 }
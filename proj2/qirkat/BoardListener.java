@@ -0,0 +1,13 @@
+package qirkat;
+
+/** An object that is told about each change to a Board.
+ *  @author Joshua Yurtsever
+ */
+interface BoardListener {
+
+    /** Respond to a change to a Board, whose new state is SNAPSHOT.
+     *  Called on the thread that changed the Board, so implementations
+     *  that do real work should hand SNAPSHOT to their own thread. */
+    void boardChanged(BoardSnapshot snapshot);
+
+}
@@ -0,0 +1,131 @@
+package qirkat;
+
+/**
+ * The state of a Board at one moment, as published to BoardListeners.
+ * A snapshot is immutable and holds only the packed position (see
+ * PackedPosition) and a few facts about how it was reached, so it costs
+ * next to nothing to make and may be read from any thread.  Successive
+ * snapshots of one Board have increasing versions.
+ *
+ * @author Joshua Yurtsever
+ */
+final class BoardSnapshot {
+
+    /**
+     * The snapshot numbered VERSION of a position with packed board
+     * SQUARES, packed RESTRICTIONS and Zobrist key KEY, reached by
+     * LASTMOVE (null if by anything other than a move), in which the
+     * game is over iff GAMEOVER.
+     */
+    BoardSnapshot(long version, long squares, long restrictions, long key,
+                  Move lastMove, boolean gameOver) {
+        _version = version;
+        _squares = squares;
+        _restrictions = restrictions;
+        _key = key;
+        _lastMove = lastMove;
+        _gameOver = gameOver;
+    }
+
+    /**
+     * Return my version.  Later snapshots of the same Board have larger
+     * versions.
+     */
+    long version() {
+        return _version;
+    }
+
+    /**
+     * Return the contents of the square with linearized index K.
+     */
+    PieceColor get(int k) {
+        return PackedPosition.get(_squares, k);
+    }
+
+    /**
+     * Return the contents of square C R, where 'a' <= C <= 'e', and
+     * '1' <= R <= '5'.
+     */
+    PieceColor get(char c, char r) {
+        return get(Move.index(c, r));
+    }
+
+    /**
+     * Return the color of the player who has the next move.
+     */
+    PieceColor whoseMove() {
+        return PackedPosition.whoseMove(_squares);
+    }
+
+    /**
+     * Return true iff the game was over.
+     */
+    boolean gameOver() {
+        return _gameOver;
+    }
+
+    /**
+     * Return the move that led to me, or null if I was published for
+     * any other change (a set-up, a clear, or an undo).
+     */
+    Move lastMove() {
+        return _lastMove;
+    }
+
+    /**
+     * Return the Zobrist key of my position.
+     */
+    long key() {
+        return _key;
+    }
+
+    /**
+     * Return my packed board.
+     */
+    long packed() {
+        return _squares;
+    }
+
+    /**
+     * Return my packed horizontal-move restrictions.
+     */
+    long packedRestrictions() {
+        return _restrictions;
+    }
+
+    /**
+     * Return a new Board holding my position, for readers that need to
+     * list or check moves.
+     */
+    Board toBoard() {
+        Board result = new Board();
+        result.setPacked(_squares, _restrictions);
+        result.checkGameOver();
+        return result;
+    }
+
+    /**
+     * My version.
+     */
+    private final long _version;
+
+    /**
+     * My packed board and restrictions.
+     */
+    private final long _squares, _restrictions;
+
+    /**
+     * My Zobrist key.
+     */
+    private final long _key;
+
+    /**
+     * The move that led to me, if any.
+     */
+    private final Move _lastMove;
+
+    /**
+     * True iff the game was over.
+     */
+    private final boolean _gameOver;
+}
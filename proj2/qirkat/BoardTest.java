@@ -1,8 +1,16 @@
 package qirkat;
 
+import java.util.ArrayList;
+
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Tests of the Board class.
@@ -22,6 +30,20 @@ public class BoardTest {
         "a3-c5-c3",
     };
 
+    /** A longer game (from testing/test06.inp), long enough to pass
+     *  several history checkpoints. */
+    private static final String[] GAME2 = {
+        "c2-c3", "c4-c2", "c1-c3", "a3-c1", "c3-a3", "b4-b3", "a3-c3",
+        "d4-b2", "a2-c2", "c1-c3", "d3-b3", "e5-d4", "e3-e5-c3", "d5-e5",
+        "c3-c4", "c5-c3-a3", "d2-e3", "b5-b4", "e3-e4", "e5-e3", "e2-e4",
+        "a3-b3", "e4-e5", "b4-a3", "b1-c1", "a5-b4", "e1-e2", "b3-c3",
+        "e2-e3", "b4-b3", "d1-e1", "a4-b4", "e3-d4", "c3-d3", "d4-d2",
+        "b3-c3", "d2-e2", "b4-b3", "a1-b1", "a3-a2", "c1-d1", "b3-a3",
+        "b1-c1", "a2-a1", "e2-e3", "c3-b2", "e3-d4", "a3-a2", "c1-a3",
+        "a2-a4", "d4-e4", "a4-b4", "d1-d2", "b4-b3", "d2-e3", "b3-b2",
+        "e1-e2", "b2-c1", "e3-d3"
+    };
+
     private static final String GAME1_BOARD =
             "  b b - b b\n  b - - b b\n  - - w w w\n  w - - w w\n  w w b w w";
 
@@ -57,4 +79,214 @@ public class BoardTest {
         makeMoves(b0, GAME1);
         assertEquals("second pass failed to reach same position", b2, b0);
     }
+
+    @Test
+    public void testMultiJumps() {
+        Board b0 = new Board();
+        b0.setPieces("----- -w--- -bbb- ----- -----", PieceColor.WHITE);
+        String before = b0.toString();
+        assertEquals("[b2-b4-d2-d4, b2-d4-d2]", b0.getMoves().toString());
+        assertEquals("getMoves changed the board", before, b0.toString());
+        ArrayList<Move> moves = new ArrayList<>();
+        b0.getJumps(moves, Move.index('c', '3'));
+        assertEquals(0, moves.size());
+    }
+
+    @Test
+    public void testPositionAt() {
+        Board b0 = new Board();
+        String[] positions = new String[GAME2.length + 1];
+        for (int i = 0; i < GAME2.length; i += 1) {
+            positions[i] = b0.toString() + b0.whoseMove();
+            b0.makeMove(Move.parseMove(GAME2[i]));
+        }
+        positions[GAME2.length] = b0.toString() + b0.whoseMove();
+        assertEquals(GAME2.length, b0.movesMade());
+        for (int i = 0; i <= GAME2.length; i += 1) {
+            Board b1 = b0.positionAt(i);
+            assertEquals("wrong position at ply " + i, positions[i],
+                         b1.toString() + b1.whoseMove());
+            assertEquals(0, b1.movesMade());
+        }
+        for (int i = GAME2.length; i > 0; i -= 1) {
+            b0.undo();
+            assertEquals(positions[i - 1], b0.toString() + b0.whoseMove());
+        }
+        try {
+            b0.undo();
+            fail("undo past the start of the game");
+        } catch (GameException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testCopiesHaveOwnHistory() {
+        Board b0 = new Board();
+        makeMoves(b0, GAME1);
+        Board b1 = new Board(b0);
+        assertEquals(0, b1.movesMade());
+        b1.makeMove(b1.getMoves().get(0));
+        assertEquals(GAME1.length, b0.movesMade());
+        assertEquals(GAME1_BOARD, b0.toString());
+    }
+
+    @Test
+    public void testEqualsAndHashCode() {
+        Board b0 = new Board(), b1 = new Board();
+        b0.setPieces("w---- ----- ----- ----- ----b", PieceColor.WHITE);
+        b1.setPieces("w---- ----- ----- ----- ----b", PieceColor.WHITE);
+        makeMoves(b0, new String[] { "a1-a2", "e5-e4", "a2-a3", "e4-e3" });
+        makeMoves(b1, new String[] { "a1-b2", "e5-e4", "b2-a3", "e4-e3" });
+        assertEquals(b0, b1);
+        assertEquals(b0.key(), b1.key());
+        assertEquals(b0.hashCode(), b1.hashCode());
+
+        b0.setPieces("w---- ----- ----- ----- ----b", PieceColor.WHITE);
+        b1.setPieces("-w--- ----- ----- ----- ----b", PieceColor.BLACK);
+        b0.makeMove(Move.parseMove("a1-b1"));
+        assertEquals(b0.toString(), b1.toString());
+        assertNotEquals("restrictions ignored", b0, b1);
+        assertNotEquals(b0.key(), b1.key());
+    }
+
+    @Test
+    public void testPackedPositions() {
+        Board b0 = new Board();
+        long init = b0.packed();
+        assertEquals("wwwww wwwww bb-ww bbbbb bbbbb",
+                     PackedPosition.toSpec(init));
+        assertEquals(init,
+                     PackedPosition.fromSpec("w w w w w w w w w w b b - w w"
+                                             + " b b b b b b b b b b",
+                                             PieceColor.WHITE));
+        assertEquals("set white wwwww wwwww bb-ww bbbbb bbbbb",
+                     PackedPosition.toSetCommand(init));
+        for (String mv : GAME2) {
+            b0.makeMove(Move.parseMove(mv));
+            Board b1 = new Board();
+            b1.setPacked(b0.packed(), b0.packedRestrictions());
+            assertEquals(b0, b1);
+            assertEquals(b0.packed(), b1.packed());
+            Board b2 = new Board();
+            b2.setPieces(PackedPosition.toSpec(b0.packed()), b0.whoseMove());
+            assertEquals(b0.toString(), b2.toString());
+            assertEquals(b0.packed(), b2.packed());
+            assertEquals(0, b2.packedRestrictions());
+        }
+        try {
+            b0.setPacked(3, 0);
+            fail("accepted a square that is both white and black");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+    }
+
+    /** Restrictions on a1 and c3 of the initial board, packed as for
+     *  Board.packedRestrictions, with whether setPacked takes them. */
+    private static final long[] RESTRICTIONS = {
+        1L, 1L << BitBoard.SQUARES, 1L | (1L << (BitBoard.SQUARES + 1)),
+        1L << 12, 1L << (BitBoard.SQUARES + 12),
+        1L | (1L << BitBoard.SQUARES), 1L << (2 * BitBoard.SQUARES),
+    };
+    /** See RESTRICTIONS. */
+    private static final boolean[] RESTRICTIONS_VALID = {
+        true, true, true, false, false, false, false,
+    };
+
+    @Test
+    public void testPackedRestrictions() {
+        long init = new Board().packed();
+        for (int i = 0; i < RESTRICTIONS.length; i += 1) {
+            Board b = new Board();
+            b.setPieces("w---- ----- ----- ----- ----b", PieceColor.BLACK);
+            Board before = new Board(b);
+            try {
+                b.setPacked(init, RESTRICTIONS[i]);
+                assertTrue("accepted " + i, RESTRICTIONS_VALID[i]);
+                assertEquals(init, b.packed());
+                assertEquals(RESTRICTIONS[i], b.packedRestrictions());
+            } catch (IllegalArgumentException excp) {
+                assertFalse("rejected " + i, RESTRICTIONS_VALID[i]);
+                assertEquals(before, b);
+                assertEquals(before.packed(), b.packed());
+                assertEquals(0, b.packedRestrictions());
+            }
+        }
+    }
+
+    /** Assert that making the move denoted by MOV on B fails with a
+     *  message ending in REASON. */
+    private static void assertRejected(Board b, String mov, String reason) {
+        try {
+            b.makeMove(Move.parseMove(mov));
+            fail(mov + " accepted");
+        } catch (GameException excp) {
+            assertEquals("invalid move: " + reason, excp.getMessage());
+        }
+    }
+
+    @Test
+    public void testValidation() {
+        Board b0 = new Board();
+        assertRejected(b0, "b4-b3", "wrong side (White to play)");
+        assertRejected(b0, "a2-a3", "not a legal step");
+        assertRejected(b0, "b1-b2", "not a legal step");
+        b0.setPieces("----- -w--- -bbb- ----- -----", PieceColor.WHITE);
+        assertRejected(b0, "b2-a2", "jump required");
+        assertRejected(b0, "b2-b4", "not a legal jump");
+        assertRejected(b0, "b2-d4-d2-b2", "not a legal jump");
+        b0.setPieces("----- --w-- ---b- ----- -----", PieceColor.WHITE);
+        assertFalse("jump along a missing diagonal",
+                    b0.legalMove(Move.parseMove("c2-e4")));
+        assertRejected(b0, "c2-e4", "not a legal jump");
+    }
+
+    @Test
+    public void testSnapshots() {
+        Board b0 = new Board();
+        Board view = b0.constantView();
+        ArrayList<BoardSnapshot> seen = new ArrayList<>();
+        view.addListener(seen::add);
+        long version = b0.snapshot().version();
+        for (String mv : GAME1) {
+            b0.makeMove(Move.parseMove(mv));
+            BoardSnapshot last = seen.get(seen.size() - 1);
+            assertSame(Move.parseMove(mv), last.lastMove());
+            assertSame(last, view.snapshot());
+            assertTrue(last.version() > version);
+            version = last.version();
+            assertEquals(b0.packed(), last.packed());
+            assertEquals(b0.toString(), view.toString());
+            assertEquals(b0, last.toBoard());
+        }
+        assertEquals(GAME1.length, seen.size());
+        assertEquals(GAME1.length, view.movesMade());
+        b0.undo();
+        assertNull(seen.get(seen.size() - 1).lastMove());
+        assertEquals(b0.toString(), view.toString());
+        assertEquals(b0.whoseMove(), view.whoseMove());
+    }
+
+    @Test
+    public void testViewOnlyOnOwningThread() throws InterruptedException {
+        Board b0 = new Board();
+        Board view = b0.constantView();
+        b0.makeMove(Move.parseMove(GAME1[0]));
+        boolean[] rejected = new boolean[1];
+        long[] packed = new long[1];
+        Thread reader = new Thread(() -> {
+            try {
+                view.whoseMove();
+            } catch (AssertionError excp) {
+                rejected[0] = true;
+            }
+            packed[0] = view.snapshot().packed();
+        });
+        reader.start();
+        reader.join();
+        assertTrue(rejected[0]);
+        assertEquals(b0.packed(), packed[0]);
+        assertEquals(b0.whoseMove(), view.whoseMove());
+    }
 }
@@ -8,8 +8,6 @@ import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
-import java.util.Observable;
-import java.util.Observer;
 
 import static qirkat.PieceColor.*;
 
@@ -18,7 +16,7 @@ import static qirkat.PieceColor.*;
  *
  * @author Joshua Yurtsever
  */
-class BoardWidget extends Pad implements Observer {
+class BoardWidget extends Pad implements BoardListener {
 
     /**
      * Length of side of one square, in pixels.
@@ -62,9 +60,9 @@ class BoardWidget extends Pad implements Observer {
     private static final BasicStroke OUTLINE_STROKE = LINE_STROKE;
 
     /**
-     * Model being displayed.
+     * The latest published state of the model being displayed.
      */
-    private static Board _model;
+    private volatile BoardSnapshot _snapshot;
     /**
      * Dimension of current drawing surface in pixels.
      */
@@ -83,9 +81,9 @@ class BoardWidget extends Pad implements Observer {
      * A new widget displaying MODEL.
      */
     BoardWidget(Board model) {
-        _model = model;
+        _snapshot = model.snapshot();
         setMouseHandler("click", this::readMove);
-        _model.addObserver(this);
+        model.addListener(this);
         _dim = SQDIM * SIDE;
         setPreferredSize(_dim, _dim);
     }
@@ -109,6 +107,7 @@ class BoardWidget extends Pad implements Observer {
 
     @Override
     public synchronized void paintComponent(Graphics2D g) {
+        BoardSnapshot model = _snapshot;
         g.setColor(BLANK_COLOR);
         g.fillRect(0, 0, _dim, _dim);
         g.setColor(LINE_COLOR);
@@ -126,7 +125,7 @@ class BoardWidget extends Pad implements Observer {
             g.drawLine(i, off, i, d);
         }
         for (int i = 0; i <= Move.MAX_INDEX; i++) {
-            PieceColor curr = _model.get(i);
+            PieceColor curr = model.get(i);
             Color piece = null;
             if (curr == EMPTY) {
                 continue;
@@ -150,7 +149,7 @@ class BoardWidget extends Pad implements Observer {
             }
             _possibleMoves = null;
         }
-        if (_model.gameOver()) {
+        if (model.gameOver()) {
             Font font = new Font("Serif", Font.PLAIN, 11 * 4);
             g.setFont(font);
             g.setColor(Color.red);
@@ -190,7 +189,8 @@ class BoardWidget extends Pad implements Observer {
     }
 
     @Override
-    public synchronized void update(Observable model, Object arg) {
+    public void boardChanged(BoardSnapshot snapshot) {
+        _snapshot = snapshot;
         repaint();
     }
 }
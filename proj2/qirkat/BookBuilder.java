@@ -0,0 +1,193 @@
+package qirkat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static qirkat.PieceColor.*;
+
+/**
+ * Builds an opening book (see OpeningBook) covering every position that
+ * can arise in the first PLIES plies of a game, whichever moves either
+ * side plays, except for those with only one legal move.
+ *
+ * For each position, a search to DEPTH finds the move the book
+ * recommends most strongly.  Then GAMES games of self-play (see
+ * SelfPlay) are played from the position after each legal move, at
+ * GAME_DEPTH, scoring 2 for a win and 1 for a draw.  The book keeps the
+ * searched move and every move that scored at least as well, each with
+ * one more than its score as its weight.  Opening positions are few
+ * (28 with a choice of move in the first six plies), and they are
+ * divided among THREADS threads.
+ *
+ * Positions are identified by their canonical keys (see
+ * BitBoard.canonicalKey), so a position whose mirror image or color
+ * exchange has already been reached is searched only once.
+ *
+ * If BOOK already exists, its positions are kept as they are and only
+ * new ones are added, so that a book can be extended to more plies, or
+ * resumed, by running the builder on it again.
+ *
+ * Usage: java qirkat.BookBuilder BOOK [PLIES [DEPTH [GAMES [THREADS]]]]
+ *
+ * @author Joshua Yurtsever
+ */
+final class BookBuilder {
+
+    /**
+     * Number of plies covered, depth searched, and games played for each
+     * move, unless given on the command line.
+     */
+    static final int DEFAULT_PLIES = 6, DEFAULT_DEPTH = 10,
+        DEFAULT_GAMES = 8;
+
+    /**
+     * The depth to which the self-play games are searched.
+     */
+    static final int GAME_DEPTH = 4;
+
+    /**
+     * Not instantiable.
+     */
+    private BookBuilder() {
+    }
+
+    /**
+     * Build the book described by ARGS (see the class comment).
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 5) {
+            usage();
+        }
+        int plies = SelfPlay.intArgument(args, 1, DEFAULT_PLIES),
+            depth = SelfPlay.intArgument(args, 2, DEFAULT_DEPTH),
+            games = SelfPlay.intArgument(args, 3, DEFAULT_GAMES),
+            threads = SelfPlay.intArgument(args, 4, 1);
+        if (plies <= 0 || depth <= 0 || games <= 0 || threads <= 0) {
+            usage();
+        }
+        File file = new File(args[0]);
+        List<OpeningBook.Entry> entries = new ArrayList<>();
+        try {
+            if (file.exists()) {
+                entries.addAll(OpeningBook.open(file).entries());
+            }
+            int before = entries.size();
+            long start = System.nanoTime();
+            entries.addAll(build(entries, plies, depth, games, threads));
+            OpeningBook.write(file, entries);
+            System.out.printf("%d records added, %d in all, %.1f s%n",
+                              entries.size() - before, entries.size(),
+                              (System.nanoTime() - start) / 1e9);
+        } catch (IOException excp) {
+            System.err.printf("Cannot build %s: %s%n", args[0],
+                              excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Return the records for the positions within PLIES plies of the
+     * start that are not among those of OLD, searching to DEPTH, playing
+     * GAMES games for each move, and using THREADS threads.
+     */
+    static List<OpeningBook.Entry> build(List<OpeningBook.Entry> old,
+                                         int plies, int depth, int games,
+                                         int threads) {
+        Set<Long> known = new HashSet<>();
+        for (OpeningBook.Entry entry : old) {
+            known.add(entry.key());
+        }
+        Map<Long, BitBoard> level = new LinkedHashMap<>();
+        BitBoard first = new Board().position();
+        level.put(first.canonicalKey(), first);
+        List<BitBoard> positions = new ArrayList<>();
+        long[] moves = new long[BitBoard.MAX_MOVES];
+        for (int ply = 0; ply < plies; ply += 1) {
+            Map<Long, BitBoard> next = new LinkedHashMap<>();
+            for (BitBoard position : level.values()) {
+                int n = position.moves(moves);
+                if (n > 1 && !known.contains(position.canonicalKey())) {
+                    positions.add(position);
+                }
+                for (int i = 0; i < n; i += 1) {
+                    BitBoard after = new BitBoard(position);
+                    after.play(moves[i]);
+                    next.putIfAbsent(after.canonicalKey(), after);
+                }
+            }
+            level = next;
+        }
+        List<List<OpeningBook.Entry>> results = new ArrayList<>();
+        for (int i = 0; i < positions.size(); i += 1) {
+            results.add(null);
+        }
+        SelfPlay.parallel(positions.size(), threads, (i) -> {
+            results.set(i, entries(positions.get(i), depth, games));
+        });
+        List<OpeningBook.Entry> result = new ArrayList<>();
+        for (List<OpeningBook.Entry> entries : results) {
+            result.addAll(entries);
+        }
+        return result;
+    }
+
+    /**
+     * Return the records for POSITION, searching to DEPTH and playing
+     * GAMES games for each move, as described in the class comment.
+     */
+    static List<OpeningBook.Entry> entries(BitBoard position, int depth,
+                                           int games) {
+        Board board = new Board();
+        Game game = SelfPlay.newGame(board);
+        board.setPacked(position.packed(), position.restrictions());
+        AI ai = new AI(game, position.whoseMove(), false);
+        ai.setDepthLimit(depth);
+        Move searched = ai.findMove();
+
+        long[] moves = new long[BitBoard.MAX_MOVES];
+        int n = position.moves(moves);
+        int[] scores = new int[n];
+        int best = 0;
+        for (int i = 0; i < n; i += 1) {
+            BitBoard after = new BitBoard(position);
+            after.play(moves[i]);
+            for (int g = 0; g < games; g += 1) {
+                double white =
+                    SelfPlay.play(after, Evaluation.DEFAULT,
+                                  Evaluation.DEFAULT, GAME_DEPTH,
+                                  position.key() ^ moves[i] ^ g, null);
+                double mine =
+                    position.whoseMove() == WHITE ? white : 1 - white;
+                scores[i] += (int) (2 * mine);
+            }
+            if (board.toMove(moves[i]).equals(searched)) {
+                best = i;
+            }
+        }
+        List<OpeningBook.Entry> result = new ArrayList<>();
+        int symmetry = position.canonicalSymmetry();
+        for (int i = 0; i < n; i += 1) {
+            if (i == best || scores[i] >= scores[best]) {
+                result.add(new OpeningBook.Entry(
+                    position.key(symmetry),
+                    BitBoard.transform(moves[i], symmetry), scores[i] + 1));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Print a usage message and exit.
+     */
+    private static void usage() {
+        System.err.println("Usage: java qirkat.BookBuilder BOOK "
+                           + "[PLIES [DEPTH [GAMES [THREADS]]]]");
+        System.exit(1);
+    }
+}
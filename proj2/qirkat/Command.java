@@ -16,7 +16,8 @@ class Command {
      *  programmer writes. */
     static enum Type {
         /* Start-up state only. */
-        AUTO("(?i)auto\\s+(white|black|dumbwhite|dumbblack)"),
+        AUTO("(?i)auto\\s+((?:white|black)(?:\\s+mcts)?"
+             + "|dumbwhite|dumbblack)"),
         MANUAL("(?i)manual\\s+(white|black)"),
         SEED("seed\\s+(\\d+)"),
         START,
@@ -25,6 +26,12 @@ class Command {
         PIECEMOVE("([a-e][1-5](?:-[a-e][1-5])+)"),
         /* Valid at any time. */
         LOAD("load\\s+(\\S+)"),
+        TIME("(?i)time\\s+(\\d+(?:\\.\\d*)?|\\.\\d+)"),
+        HASH("(?i)hash\\s+(\\d+)"),
+        THREADS("(?i)threads\\s+(\\d+)"),
+        PONDER("(?i)ponder\\s+(on|off)"),
+        TABLEBASES("(?i)tablebases\\s+(\\S+)"),
+        BOOK("(?i)book\\s+(\\S+)"),
         QUIT, CLEAR, DUMP, HELP,
         /* Special "commands" internally generated. */
         /** Syntax error in command. */
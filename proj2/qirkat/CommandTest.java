@@ -31,6 +31,14 @@ public class CommandTest {
     @Test public void testAUTO() {
         check("auto white", AUTO, "white");
         check("auto black", AUTO, "black");
+        check("auto white mcts", AUTO, "white mcts");
+        check("auto black  MCTS", AUTO, "black  MCTS");
+        check("auto dumbwhite", AUTO, "dumbwhite");
+        check("auto DumbBlack", AUTO, "DumbBlack");
+        checkError("auto mcts");
+        checkError("auto dumbwhite mcts");
+        checkError("auto dumbblack MCTS");
+        checkError("auto white alphabeta");
         checkError("auto green");
         checkError("auto");
         checkError("auto red foo");
@@ -43,6 +51,37 @@ public class CommandTest {
         checkError("seed 142 foo");
     }
 
+    @Test public void testTIME() {
+        check("time 5", TIME, "5");
+        check("time 0.25", TIME, "0.25");
+        check("TIME .5", TIME, ".5");
+        checkError("time");
+        checkError("time -1");
+        checkError("time 1 2");
+    }
+
+    @Test public void testHASH() {
+        check("hash 64", HASH, "64");
+        check("HASH 1", HASH, "1");
+        checkError("hash");
+        checkError("hash 1.5");
+        checkError("hash -1");
+    }
+
+    @Test public void testTHREADS() {
+        check("threads 8", THREADS, "8");
+        check("Threads 1", THREADS, "1");
+        checkError("threads");
+        checkError("threads two");
+    }
+
+    @Test public void testPONDER() {
+        check("ponder on", PONDER, "on");
+        check("PONDER Off", PONDER, "Off");
+        checkError("ponder");
+        checkError("ponder yes");
+    }
+
     @Test public void testSTART() {
         check("start", START);
         checkError("start foo");
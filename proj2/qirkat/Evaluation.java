@@ -0,0 +1,261 @@
+package qirkat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Scanner;
+
+import static qirkat.PieceColor.*;
+
+/**
+ * A heuristic evaluation of positions for the AI's search: a weighted sum
+ * of features of the position.  The features are material and, for each
+ * piece, how far it has advanced (not counting the far row, from which it
+ * can only capture), whether it stands in the centre, on a point with
+ * diagonals, or on its own home row; the number of pieces that can step;
+ * and the number of pieces the opponent could capture.
+ *
+ * Material and the per-piece features depend only on which squares hold
+ * which pieces, so they are folded into a table of values per square
+ * (squareValues) that a BitBoard keeps a running total of (see
+ * BitBoard.setSquareValues).  Only the mobility and exposure terms are
+ * computed afresh for each position evaluated, from masks the BitBoard
+ * mostly has already.
+ *
+ * Values are in units of PIECE_VALUE to a piece; the weights of the other
+ * features are in the same units.  The default weights are read from the
+ * resource WEIGHTS_RESOURCE, if there is one, in the form written by
+ * write (see Tuner, which fits them to games the AI has played).
+ *
+ * @author Joshua Yurtsever
+ */
+final class Evaluation {
+
+    /**
+     * The value of a piece.
+     */
+    static final int PIECE_VALUE = 100;
+
+    /**
+     * Indices of the weights (see weight): per row advanced, for standing
+     * in the centre, on a point with diagonals, or on the home row, per
+     * piece able to step, and per piece exposed to capture (usually
+     * negative).
+     */
+    static final int
+        ADVANCE = 0, CENTRE = 1, DIAGONAL = 2, BACK_RANK = 3,
+        MOBILITY = 4, EXPOSED = 5, WEIGHTS = 6;
+
+    /**
+     * The names of the weights, as used in weight files.
+     */
+    static final String[] NAMES = {
+        "advance", "centre", "diagonal", "back-rank", "mobility", "exposed"
+    };
+
+    /**
+     * The weights used if there is no WEIGHTS_RESOURCE, chosen by hand
+     * and self-play, in which advancing for its own sake gained nothing.
+     */
+    static final Evaluation BUILT_IN =
+        new Evaluation(new int[] { 0, 6, 4, 6, 3, -12 });
+
+    /**
+     * The name of the resource holding the default weights.
+     */
+    static final String WEIGHTS_RESOURCE = "qirkat/weights.txt";
+
+    /**
+     * The evaluation used unless another is given: that read from
+     * WEIGHTS_RESOURCE, or BUILT_IN if there is none.
+     */
+    static final Evaluation DEFAULT = readDefault();
+
+    /**
+     * An evaluation whose weights, indexed as for weight, are WEIGHTS.
+     */
+    Evaluation(int[] weights) {
+        if (weights.length != WEIGHTS) {
+            throw new IllegalArgumentException("wrong number of weights");
+        }
+        _weights = weights.clone();
+        for (int k = 0; k < BitBoard.SQUARES; k += 1) {
+            int value = PIECE_VALUE;
+            for (int f = ADVANCE; f <= BACK_RANK; f += 1) {
+                value += _weights[f] * squareFeature(f, k);
+            }
+            _squareValues[WHITE.ordinal()][k] = value;
+            _squareValues[BLACK.ordinal()][BitBoard.SQUARES - 1 - k] = value;
+        }
+    }
+
+    /**
+     * Return the evaluation whose weights are read from INPUT, which
+     * gives each weight as its name (see NAMES) followed by its value,
+     * in any order.  Lines starting with '#' are ignored.
+     */
+    static Evaluation read(Reader input) {
+        int[] weights = new int[WEIGHTS];
+        boolean[] seen = new boolean[WEIGHTS];
+        Scanner inp = new Scanner(input);
+        while (inp.hasNextLine()) {
+            String line = inp.nextLine().trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] words = line.split("\\s+");
+            int i = Arrays.asList(NAMES).indexOf(words[0]);
+            if (i < 0 || seen[i] || words.length != 2) {
+                throw new IllegalArgumentException("bad weight: " + line);
+            }
+            try {
+                weights[i] = Integer.parseInt(words[1]);
+            } catch (NumberFormatException excp) {
+                throw new IllegalArgumentException("bad weight: " + line);
+            }
+            seen[i] = true;
+        }
+        for (int i = 0; i < WEIGHTS; i += 1) {
+            if (!seen[i]) {
+                throw new IllegalArgumentException("missing weight: "
+                                                   + NAMES[i]);
+            }
+        }
+        return new Evaluation(weights);
+    }
+
+    /**
+     * Write my weights to OUTPUT in the form read by read.
+     */
+    void write(PrintWriter output) {
+        for (int i = 0; i < WEIGHTS; i += 1) {
+            output.printf("%s %d%n", NAMES[i], _weights[i]);
+        }
+        output.flush();
+    }
+
+    /**
+     * Return the evaluation read from WEIGHTS_RESOURCE, or BUILT_IN if
+     * there is no such resource.
+     */
+    private static Evaluation readDefault() {
+        InputStream in = Evaluation.class.getClassLoader()
+            .getResourceAsStream(WEIGHTS_RESOURCE);
+        if (in == null) {
+            return BUILT_IN;
+        }
+        try (Reader input = new InputStreamReader(in)) {
+            return read(input);
+        } catch (IOException | IllegalArgumentException excp) {
+            throw new Error("cannot read " + WEIGHTS_RESOURCE + ": "
+                            + excp.getMessage());
+        }
+    }
+
+    /**
+     * Return weight number I.
+     */
+    int weight(int i) {
+        return _weights[i];
+    }
+
+    /**
+     * Return the values of pieces on each square for each color, by
+     * ordinal, as for BitBoard.setSquareValues.  The result must not be
+     * modified.
+     */
+    int[][] squareValues() {
+        return _squareValues;
+    }
+
+    /**
+     * Return my value of BOARD, which is not a finished game and whose
+     * square values are my squareValues(), for the side to move.
+     */
+    int score(BitBoard board) {
+        PieceColor side = board.whoseMove(), other = side.opposite();
+        int score = side == WHITE ? board.squareScore()
+            : -board.squareScore();
+        score += _weights[MOBILITY]
+            * (Integer.bitCount(board.steppers(side))
+               - Integer.bitCount(board.steppers(other)));
+        score += _weights[EXPOSED] * Integer.bitCount(board.exposed(side));
+        return score;
+    }
+
+    /**
+     * Return the difference between the numbers of pieces of the side to
+     * move in BOARD and of its opponent.
+     */
+    static int material(BitBoard board) {
+        PieceColor side = board.whoseMove();
+        return Integer.bitCount(board.pieces(side))
+            - Integer.bitCount(board.pieces(side.opposite()));
+    }
+
+    /**
+     * Set FEATURES[I] to the value in BOARD, for the side to move, of the
+     * feature whose weight is weight(I), so that score(BOARD) is
+     * PIECE_VALUE * material(BOARD) plus the sum of the features times
+     * their weights.
+     */
+    static void features(BitBoard board, int[] features) {
+        PieceColor side = board.whoseMove(), other = side.opposite();
+        for (int f = ADVANCE; f <= BACK_RANK; f += 1) {
+            features[f] = squareFeatures(board, side, f)
+                - squareFeatures(board, other, f);
+        }
+        features[MOBILITY] = Integer.bitCount(board.steppers(side))
+            - Integer.bitCount(board.steppers(other));
+        features[EXPOSED] = Integer.bitCount(board.exposed(side));
+    }
+
+    /**
+     * Return the total of per-piece feature F over the pieces of color C
+     * in BOARD.
+     */
+    private static int squareFeatures(BitBoard board, PieceColor c, int f) {
+        int total;
+        total = 0;
+        for (int b = board.pieces(c); b != 0; b &= b - 1) {
+            int k = Integer.numberOfTrailingZeros(b);
+            if (c == BLACK) {
+                k = BitBoard.SQUARES - 1 - k;
+            }
+            total += squareFeature(f, k);
+        }
+        return total;
+    }
+
+    /**
+     * Return the value of per-piece feature F (ADVANCE through BACK_RANK)
+     * for a white piece on square K.
+     */
+    private static int squareFeature(int f, int k) {
+        int row = k / Move.SIDE, col = k % Move.SIDE;
+        switch (f) {
+        case ADVANCE:
+            return row == Move.SIDE - 1 ? 0 : row;
+        case CENTRE:
+            return row > 0 && row < Move.SIDE - 1
+                && col > 0 && col < Move.SIDE - 1 ? 1 : 0;
+        case DIAGONAL:
+            return k % 2 == 0 ? 1 : 0;
+        default:
+            return row == 0 ? 1 : 0;
+        }
+    }
+
+    /**
+     * The weights of the features.
+     */
+    private final int[] _weights;
+
+    /**
+     * The value of a piece of each color (by ordinal) on each square.
+     */
+    private final int[][] _squareValues = new int[3][BitBoard.SQUARES];
+}
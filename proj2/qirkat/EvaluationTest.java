@@ -0,0 +1,77 @@
+package qirkat;
+
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static qirkat.Evaluation.*;
+
+/**
+ * Tests of the Evaluation class.
+ *
+ * @author Joshua Yurtsever
+ */
+public class EvaluationTest {
+
+    @Test
+    public void testScoreIsWeightedFeatures() {
+        Evaluation eval = new Evaluation(new int[] { 1, 2, 3, 4, 5, -6 });
+        int[] features = new int[WEIGHTS];
+        long[] buf = new long[BitBoard.MAX_MOVES];
+        Random rand = new Random(63);
+        for (int game = 0; game < 20; game += 1) {
+            BitBoard b = BitBoardTest.setUp("wwwww wwwww bb-ww bbbbb bbbbb",
+                                            PieceColor.WHITE);
+            b.setSquareValues(eval.squareValues());
+            while (b.hasMove()) {
+                Evaluation.features(b, features);
+                int expected = PIECE_VALUE * material(b);
+                for (int i = 0; i < WEIGHTS; i += 1) {
+                    expected += eval.weight(i) * features[i];
+                }
+                assertEquals(expected, eval.score(b));
+                int n = b.moves(buf);
+                b.make(buf[rand.nextInt(n)]);
+            }
+        }
+    }
+
+    @Test
+    public void testSymmetry() {
+        BitBoard white = BitBoardTest.setUp("w---- ---b- ----- ----- -----",
+                                            PieceColor.WHITE);
+        BitBoard black = BitBoardTest.setUp("----- ----- ----- -w--- ----b",
+                                            PieceColor.BLACK);
+        for (BitBoard b : new BitBoard[] { white, black }) {
+            b.setSquareValues(DEFAULT.squareValues());
+        }
+        assertEquals(DEFAULT.score(white), DEFAULT.score(black));
+    }
+
+    @Test
+    public void testReadWrite() {
+        Evaluation eval = new Evaluation(new int[] { 1, 2, 3, 4, 5, -6 });
+        StringWriter text = new StringWriter();
+        eval.write(new PrintWriter(text));
+        Evaluation copy = read(new StringReader("# comment\n\n" + text));
+        for (int i = 0; i < WEIGHTS; i += 1) {
+            assertEquals(eval.weight(i), copy.weight(i));
+        }
+        String[] bad = {
+            "advance 1", text + "advance 1", text + "speed 2",
+            text.toString().replace("-6", "x"),
+        };
+        for (String input : bad) {
+            try {
+                read(new StringReader(input));
+                fail("accepted " + input);
+            } catch (IllegalArgumentException excp) {
+                assertTrue(excp.getMessage().contains("weight"));
+            }
+        }
+    }
+}
@@ -24,10 +24,11 @@ class GUI extends TopLevel implements Observer, Reporter {
      * unnecessary as possible for the rest of the program to know that it
      * is interacting with a GUI as opposed to a terminal.
      *
-     * To this end, we first have made Board observable, so that the
-     * GUI gets notified of changes to a Game's board and can interrogate
-     * it as needed, while the Game and Board themselves need not be aware
-     * that it is being watched.
+     * To this end, we first have the BoardWidget listen to the Board, so
+     * that it gets an immutable snapshot of each change to a Game's board
+     * to draw from, while the Game and Board themselves need not be aware
+     * that it is being watched.  When the user clicks, the GUI works out
+     * the moves from a private Board made from the latest snapshot.
      *
      * Second, instead of creating a new API by which the GUI communicates
      * with a Game, we instead simply arrange to make the GUI's input look
@@ -92,7 +93,6 @@ class GUI extends TopLevel implements Observer, Reporter {
                         "ibottom", 5));
         setMinimumSize(MIN_SIZE, MIN_SIZE);
         _widget.addObserver(this);
-        _model.addObserver(this);
     }
 
     /**
@@ -202,16 +202,15 @@ class GUI extends TopLevel implements Observer, Reporter {
 
     @Override
     public void update(Observable obs, Object arg) {
-        if (obs == _model) {
-            _widget.update(obs, arg);
-        } else if (obs == _widget) {
+        if (obs == _widget) {
+            Board model = _model.snapshot().toBoard();
             ArrayList<Move> moves = new ArrayList<>();
             int k = Move.index(((String) arg).charAt(0),
                     ((String) arg).charAt(1));
-            if (_model.jumpPossible()) {
-                _model.getJumps(moves, k);
+            if (model.jumpPossible()) {
+                model.getJumps(moves, k);
             } else {
-                _model.getMoves(moves, k);
+                model.getMoves(moves, k);
             }
             if (from == null) {
                 if (moves.size() == 0) {
@@ -223,7 +222,7 @@ class GUI extends TopLevel implements Observer, Reporter {
             } else {
                 from += "-" + arg;
             }
-            for (Move mv : _model.getMoves()) {
+            for (Move mv : model.getMoves()) {
                 if (mv.toString().equals(from)) {
                     movePiece((String) arg);
                     return;
@@ -232,7 +231,7 @@ class GUI extends TopLevel implements Observer, Reporter {
                 }
             }
             from = null;
-            update(_model, null);
+            _widget.repaint();
         }
     }
 
@@ -252,6 +251,6 @@ class GUI extends TopLevel implements Observer, Reporter {
         _widget.indicateMove(mov);
         System.out.println(mov);
         _out.println(mov.toString());
-        update(_model, null);
+        _widget.repaint();
     }
 }
@@ -3,6 +3,7 @@ package qirkat;
 /* Author: P. N. Hilfinger */
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
@@ -32,6 +33,23 @@ class Game {
         SETUP, PLAYING;
     }
 
+    /**
+     * Milliseconds an AI may spend choosing each move, unless changed
+     * by a 'time' command.
+     */
+    static final long DEFAULT_MOVE_TIME = 1000;
+
+    /**
+     * Megabytes an AI may use for its transposition table, unless changed
+     * by a 'hash' command.
+     */
+    static final int DEFAULT_HASH_SIZE = 16;
+
+    /**
+     * Largest number of threads an AI may search with.
+     */
+    static final int MAX_THREADS = 64;
+
     /**
      * A new Game, using BOARD to play on, reading initially from
      * BASESOURCE and using REPORTER for error and informational messages.
@@ -66,7 +84,15 @@ class Game {
             turn = _board.whoseMove() == WHITE ? white : black;
             while (_state != SETUP && !_board.gameOver()) {
                 Move move;
-                move = turn.myMove();
+                Player waiting = opposite(turn);
+                if (_ponder && turn instanceof Manual) {
+                    waiting.startPondering();
+                }
+                try {
+                    move = turn.myMove();
+                } finally {
+                    waiting.stopPondering();
+                }
                 if (move == null) {
                     doClear(null);
                 }
@@ -76,7 +102,7 @@ class Game {
                         _board.checkGameOver();
                         turn = opposite(turn);
                     } catch (GameException excp) {
-                        if (turn instanceof AI) {
+                        if (!(turn instanceof Manual)) {
                             throw error("something wrong with AI: "
                                     + excp.getMessage());
                         }
@@ -184,11 +210,17 @@ class Game {
     /* Command Processors */
 
     /**
-     * Perform the command 'auto OPERANDS[0]'.
+     * Perform the command 'auto OPERANDS[0]'.  The operand is a color,
+     * optionally followed by "mcts" to choose a MonteCarloAI rather than
+     * an AI, or "dumbwhite" or "dumbblack" for an AI that moves at
+     * random.  A random player has no search to choose, so the command
+     * pattern does not allow "mcts" after those.
      */
     void doAuto(String[] operands) {
         _state = SETUP;
-        String str = operands[0];
+        String[] words = operands[0].toLowerCase().split("\\s+");
+        String str = words[0];
+        boolean mcts = words.length > 1;
         boolean dumb = false;
         if (str.equals("dumbwhite")) {
             dumb = true;
@@ -197,10 +229,13 @@ class Game {
             dumb = true;
             str = "black";
         }
-        if (str.equals("White") || str.equals("white")) {
-            white = new AI(this, WHITE, dumb);
-        } else if (str.equals("Black") || str.equals("black")) {
-            black = new AI(this, BLACK, dumb);
+        assert !(dumb && mcts);
+        if (str.equals("white")) {
+            white = mcts ? new MonteCarloAI(this, WHITE)
+                : new AI(this, WHITE, dumb);
+        } else if (str.equals("black")) {
+            black = mcts ? new MonteCarloAI(this, BLACK)
+                : new AI(this, BLACK, dumb);
         }
     }
 
@@ -359,6 +394,126 @@ class Game {
         }
     }
 
+    /**
+     * Execute 'time OPERANDS[0]' command, where the operand is a number
+     * of seconds that an AI may spend choosing each move.
+     */
+    void doTime(String[] operands) {
+        double seconds = Double.parseDouble(operands[0]);
+        if (seconds <= 0) {
+            throw error("time must be positive");
+        }
+        _moveTime = Math.max(1, (long) (seconds * 1000));
+    }
+
+    /**
+     * Return the number of milliseconds an AI may spend choosing a move.
+     */
+    long moveTime() {
+        return _moveTime;
+    }
+
+    /**
+     * Execute 'hash OPERANDS[0]' command, where the operand is the number
+     * of megabytes an AI may use for its transposition table.
+     */
+    void doHash(String[] operands) {
+        int megabytes;
+        try {
+            megabytes = Integer.parseInt(operands[0]);
+        } catch (NumberFormatException e) {
+            megabytes = -1;
+        }
+        if (megabytes < TranspositionTable.MIN_MEGABYTES
+            || megabytes > TranspositionTable.MAX_MEGABYTES) {
+            throw error("hash size must be from %d to %d megabytes",
+                        TranspositionTable.MIN_MEGABYTES,
+                        TranspositionTable.MAX_MEGABYTES);
+        }
+        _hashSize = megabytes;
+    }
+
+    /**
+     * Return the number of megabytes an AI may use for its transposition
+     * table.
+     */
+    int hashSize() {
+        return _hashSize;
+    }
+
+    /**
+     * Execute 'threads OPERANDS[0]' command, where the operand is the
+     * number of threads an AI may search with.
+     */
+    void doThreads(String[] operands) {
+        int threads;
+        try {
+            threads = Integer.parseInt(operands[0]);
+        } catch (NumberFormatException e) {
+            threads = -1;
+        }
+        if (threads < 1 || threads > MAX_THREADS) {
+            throw error("number of threads must be from 1 to %d",
+                        MAX_THREADS);
+        }
+        _threads = threads;
+    }
+
+    /**
+     * Return the number of threads an AI may search with.
+     */
+    int threads() {
+        return _threads;
+    }
+
+    /**
+     * Execute 'ponder OPERANDS[0]' command, where the operand is "on" or
+     * "off", turning on or off thinking by an AI while a manual player
+     * chooses its move.
+     */
+    void doPonder(String[] operands) {
+        _ponder = operands[0].equalsIgnoreCase("on");
+    }
+
+    /**
+     * Execute 'tablebases OPERANDS[0]' command, where the operand is the
+     * directory holding the endgame tablebases an AI may consult (see
+     * Tablebase).
+     */
+    void doTablebases(String[] operands) {
+        try {
+            _tablebase = Tablebase.open(new File(operands[0]));
+        } catch (IOException excp) {
+            throw error("cannot use tablebases: %s", excp.getMessage());
+        }
+    }
+
+    /**
+     * Return the endgame tablebases an AI may consult.
+     */
+    Tablebase tablebase() {
+        return _tablebase;
+    }
+
+    /**
+     * Execute 'book OPERANDS[0]' command, where the operand is the file
+     * holding the opening book an AI may play from (see OpeningBook).
+     */
+    void doBook(String[] operands) {
+        try {
+            _book = OpeningBook.open(new File(operands[0]));
+        } catch (IOException excp) {
+            throw error("cannot use opening book: %s", excp.getMessage());
+        }
+    }
+
+    /**
+     * Return the opening book an AI may play from.
+     */
+    OpeningBook book() {
+        return _book;
+    }
+
     /**
      * Execute the artificial 'error' command.
      */
@@ -393,6 +548,12 @@ class Game {
         _commands.put(SETBOARD, this::doSet);
         _commands.put(START, this::doStart);
         _commands.put(LOAD, this::doLoad);
+        _commands.put(TIME, this::doTime);
+        _commands.put(HASH, this::doHash);
+        _commands.put(THREADS, this::doThreads);
+        _commands.put(PONDER, this::doPonder);
+        _commands.put(TABLEBASES, this::doTablebases);
+        _commands.put(BOOK, this::doBook);
         _commands.put(QUIT, this::doQuit);
         _commands.put(ERROR, this::doError);
         _commands.put(EOF, this::doQuit);
@@ -412,6 +573,31 @@ class Game {
      * Indicate which players are manual players (as opposed to AIs).
      */
     private boolean _whiteIsManual, _blackIsManual;
+    /**
+     * Milliseconds allowed to an AI for each move.
+     */
+    private long _moveTime = DEFAULT_MOVE_TIME;
+    /**
+     * Megabytes allowed to an AI for its transposition table.
+     */
+    private int _hashSize = DEFAULT_HASH_SIZE;
+    /**
+     * Number of threads an AI may search with.
+     */
+    private int _threads = 1;
+    /**
+     * True iff an AI is to think while a manual player chooses its move.
+     */
+    private boolean _ponder;
+    /**
+     * Endgame tablebases an AI may consult.
+     */
+    private Tablebase _tablebase = new Tablebase();
+    /**
+     * Opening book an AI may play from.
+     */
+    private OpeningBook _book = new OpeningBook();
+
     /**
      * Current game state.
      */
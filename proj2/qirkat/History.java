@@ -0,0 +1,132 @@
+package qirkat;
+
+import java.util.Arrays;
+
+/**
+ * The record of one game played on one Board: the position it started
+ * from and the moves made since, kept as a compact log.  Each entry holds
+ * the encoded move (see BitBoard.encode) and the horizontal-move
+ * restrictions in force before it, which is exactly what is needed to
+ * take the move back, so undoing a move takes constant time.  Every
+ * CHECKPOINT_INTERVAL moves the log also saves the whole position, so
+ * that any earlier position can be recovered by replaying at most that
+ * many moves from the nearest checkpoint.
+ *
+ * Memory is proportional to the length of the game.  Each Board has
+ * its own History, so copies made for searching never add to the game's.
+ *
+ * @author Joshua Yurtsever
+ */
+final class History {
+
+    /**
+     * Number of moves between saved positions.
+     */
+    static final int CHECKPOINT_INTERVAL = 16;
+
+    /**
+     * Start a new, empty log whose initial position is START.
+     */
+    void reset(BitBoard start) {
+        _size = 0;
+        checkpoint(start);
+    }
+
+    /**
+     * Return the number of moves in the log.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Return the encoded move made at PLY (0-based).
+     */
+    long move(int ply) {
+        assert 0 <= ply && ply < _size;
+        return _log[LOG_SIZE * ply];
+    }
+
+    /**
+     * Append the encoded move MV, made with RESTRICTIONS in force, after
+     * which the position was AFTER.
+     */
+    void record(long mv, long restrictions, BitBoard after) {
+        if (LOG_SIZE * _size == _log.length) {
+            _log = Arrays.copyOf(_log, 2 * _log.length);
+        }
+        _log[LOG_SIZE * _size] = mv;
+        _log[LOG_SIZE * _size + 1] = restrictions;
+        _size += 1;
+        if (_size % CHECKPOINT_INTERVAL == 0) {
+            checkpoint(after);
+        }
+    }
+
+    /**
+     * Take back the last move in the log on B, which must currently hold
+     * the position after it.  Returns false, leaving B unchanged, if the
+     * log is empty.
+     */
+    boolean undo(BitBoard b) {
+        if (_size == 0) {
+            return false;
+        }
+        _size -= 1;
+        b.retract(_log[LOG_SIZE * _size], _log[LOG_SIZE * _size + 1]);
+        return true;
+    }
+
+    /**
+     * Set B to the position after the first PLY moves of the log, where
+     * 0 <= PLY <= size().
+     */
+    void seek(int ply, BitBoard b) {
+        assert 0 <= ply && ply <= _size;
+        int c = ply / CHECKPOINT_INTERVAL;
+        b.setPacked(_checkpoints[CHECKPOINT_SIZE * c],
+                    _checkpoints[CHECKPOINT_SIZE * c + 1]);
+        for (int p = c * CHECKPOINT_INTERVAL; p < ply; p += 1) {
+            b.play(_log[LOG_SIZE * p]);
+        }
+    }
+
+    /**
+     * Save B as the position after the current last move.
+     */
+    private void checkpoint(BitBoard b) {
+        int w = (_size / CHECKPOINT_INTERVAL) * CHECKPOINT_SIZE;
+        if (w == _checkpoints.length) {
+            _checkpoints = Arrays.copyOf(_checkpoints,
+                                         2 * _checkpoints.length);
+        }
+        _checkpoints[w] = b.packed();
+        _checkpoints[w + 1] = b.restrictions();
+    }
+
+    /**
+     * Number of longs per move in _log.
+     */
+    private static final int LOG_SIZE = 2;
+
+    /**
+     * Number of longs per saved position in _checkpoints: the packed
+     * board and the packed restrictions (see PackedPosition).
+     */
+    private static final int CHECKPOINT_SIZE = 2;
+
+    /**
+     * Pairs of encoded move and prior restrictions, in order of play.
+     */
+    private long[] _log = new long[LOG_SIZE * CHECKPOINT_INTERVAL];
+
+    /**
+     * The position at every CHECKPOINT_INTERVAL-th ply, starting with 0.
+     */
+    private long[] _checkpoints = new long[2 * CHECKPOINT_SIZE];
+
+    /**
+     * Number of moves in the log.
+     */
+    private int _size;
+}
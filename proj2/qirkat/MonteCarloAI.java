@@ -0,0 +1,433 @@
+package qirkat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static qirkat.PieceColor.*;
+
+/**
+ * A Player that chooses its moves by Monte Carlo tree search.  Each
+ * iteration descends a tree of positions from the current one, choosing
+ * at each node the move with the best UCT (upper confidence bound)
+ * value, adds one new node, and plays a random game out from there on a
+ * BitBoard.  The result of the game is counted as a win or loss for each
+ * move on the path.  When the time for a move is up, the move tried most
+ * often is played.
+ *
+ * Playouts are lightly biased: since captures are forced, a capture
+ * taking the most pieces is always chosen among them, and a game that
+ * runs to PLAYOUT_LIMIT plies is won by the side with more pieces.
+ *
+ * The part of the tree below the moves played since is kept for the
+ * next move.  The tree holds at most about as many nodes as the game's
+ * hash size allows (see Game.hashSize); beyond that, iterations go on
+ * refining the values of the existing nodes.
+ *
+ * With more than one thread, each plays out games on its own, sharing
+ * the tree, which is locked while a path is chosen or a result recorded.
+ * Every node on a path counts as visited (and so as a loss) as soon as
+ * the path is chosen, so that other threads tend to look elsewhere until
+ * the result is in.
+ *
+ * @author Joshua Yurtsever
+ */
+class MonteCarloAI extends Player {
+
+    /**
+     * Length, in plies, after which a playout is decided on material.
+     */
+    static final int PLAYOUT_LIMIT = 100;
+
+    /**
+     * The weight of the exploration term of the UCT value.
+     */
+    static final double EXPLORATION = 1.0;
+
+    /**
+     * The most nodes on a path from the root that an iteration follows
+     * before playing out.
+     */
+    private static final int MAX_PATH = 128;
+
+    /**
+     * The most plies below the root of the last tree searched for the
+     * position of the next move.
+     */
+    private static final int REUSE_PLIES = 6;
+
+    /**
+     * Approximate number of bytes used by a node of the tree.
+     */
+    private static final int NODE_BYTES = 96;
+
+    /**
+     * A new MonteCarloAI for GAME that will play MYCOLOR.
+     */
+    MonteCarloAI(Game game, PieceColor myColor) {
+        super(game, myColor);
+    }
+
+    @Override
+    Move myMove() {
+        Main.startTiming();
+        Move move = findMove();
+        System.out.printf("%s moves %s. \n",
+                myColor(), move);
+        Main.endTiming();
+        return move;
+    }
+
+    /**
+     * Return a move for me from the current position, assuming there is
+     * a move.
+     */
+    Move findMove() {
+        return board().toMove(search(board().position(),
+                                     game().moveTime(), game().threads()));
+    }
+
+    /**
+     * Return the move for the side to move in POSITION tried most often
+     * in about BUDGET milliseconds of iterations by THREADS threads.  If
+     * there is only one legal move, it is returned without searching.
+     */
+    private long search(BitBoard position, long budget, int threads) {
+        _playouts = 0;
+        long[] moves = new long[BitBoard.MAX_MOVES];
+        if (position.moves(moves) == 1) {
+            return moves[0];
+        }
+        reuseTree(position);
+        _maxNodes = (int) Math.min(Integer.MAX_VALUE - 1,
+                                   ((long) game().hashSize() << 20)
+                                   / NODE_BYTES);
+        _deadline = System.nanoTime() + budget * 1000000;
+        Thread[] helpers = new Thread[threads - 1];
+        for (int i = 0; i < helpers.length; i += 1) {
+            Worker worker = new Worker(game().nextRandom(Integer.MAX_VALUE));
+            helpers[i] = new Thread(worker::run);
+            helpers[i].start();
+        }
+        new Worker(game().nextRandom(Integer.MAX_VALUE)).run();
+        boolean interrupted = false;
+        for (Thread helper : helpers) {
+            while (helper.isAlive()) {
+                try {
+                    helper.join();
+                } catch (InterruptedException excp) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        Node best = null;
+        for (Node child : _root._children) {
+            if (child != null
+                && (best == null || child._visits > best._visits)) {
+                best = child;
+            }
+        }
+        return best == null ? _root._moves[0] : best._move;
+    }
+
+    /**
+     * Make _root the node for POSITION, with _rootPosition a copy of
+     * it.  If the tree for my last move has POSITION at most REUSE_PLIES
+     * plies below its root, the shallowest such subtree is kept;
+     * otherwise the tree starts afresh.
+     */
+    private void reuseTree(BitBoard position) {
+        Node found = null;
+        if (_root != null) {
+            BitBoard board = new BitBoard(_rootPosition);
+            for (int plies = 0; found == null && plies <= REUSE_PLIES;
+                 plies += 1) {
+                found = find(_root, board, position, plies);
+            }
+        }
+        _root = found == null ? new Node(0) : found;
+        _rootPosition = new BitBoard(position);
+    }
+
+    /**
+     * Return a node exactly PLIES plies below NODE, whose position is on
+     * BOARD, whose position is POSITION, or null if there is none.
+     * BOARD is left as it was.
+     */
+    private static Node find(Node node, BitBoard board, BitBoard position,
+                             int plies) {
+        if (plies == 0) {
+            return board.samePosition(position) ? node : null;
+        } else if (node._children == null) {
+            return null;
+        }
+        long restrictions = board.restrictions();
+        for (Node child : node._children) {
+            if (child != null) {
+                board.play(child._move);
+                Node found = find(child, board, position, plies - 1);
+                board.retract(child._move, restrictions);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the number of iterations done while finding my last move.
+     */
+    long playouts() {
+        return _playouts;
+    }
+
+    /**
+     * Return the number of times the position now at the root of my
+     * tree has been visited, counting visits kept from earlier moves.
+     */
+    int rootVisits() {
+        synchronized (_lock) {
+            return _root == null ? 0 : _root._visits;
+        }
+    }
+
+    /**
+     * A node of the search tree: a position, reached by a move.
+     */
+    private static final class Node {
+
+        /**
+         * A node for the position reached by encoded move MOVE (0 for the
+         * root).
+         */
+        Node(long move) {
+            _move = move;
+        }
+
+        /**
+         * Return the index among my children of the one to visit next,
+         * which is the first not yet visited, if any, or else the one
+         * with the greatest UCT value.
+         */
+        int select() {
+            double logVisits = Math.log(_visits);
+            int best = 0;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < _children.length; i += 1) {
+                Node child = _children[i];
+                if (child == null || child._visits == 0) {
+                    return i;
+                }
+                double value = child._wins / child._visits
+                    + EXPLORATION * Math.sqrt(logVisits / child._visits);
+                if (value > bestValue) {
+                    best = i;
+                    bestValue = value;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * The encoded move that reaches me.
+         */
+        private final long _move;
+
+        /**
+         * The legal moves from my position, and the nodes they lead to
+         * (null until first visited).  Both are null until I am
+         * expanded.
+         */
+        private long[] _moves;
+        /** See _moves. */
+        private Node[] _children;
+
+        /**
+         * Number of visits, including those whose results are not yet
+         * recorded.
+         */
+        private int _visits;
+
+        /**
+         * Total result of my recorded visits for the side that moved to
+         * me: 1 for a win, 1/2 for a draw.
+         */
+        private double _wins;
+    }
+
+    /**
+     * One thread's share of the iterations.  Each has its own board and
+     * source of random numbers.
+     */
+    private final class Worker {
+
+        /**
+         * A new Worker whose random numbers come from SEED.
+         */
+        Worker(long seed) {
+            _random = new Random(seed);
+        }
+
+        /**
+         * Do iterations until the time is up, but at least one, so that
+         * the root is expanded however small the budget.
+         */
+        void run() {
+            do {
+                int length = descend();
+                PieceColor winner = playout();
+                record(length, winner);
+            } while (System.nanoTime() < _deadline);
+        }
+
+        /**
+         * Set _board to the root position and choose a path from the
+         * root, leaving _board at its end, adding at most one new node.
+         * Each node on the path is counted as visited.  Return the number
+         * of nodes on the path, which are in _path.
+         */
+        private int descend() {
+            synchronized (_lock) {
+                _board.copy(_rootPosition);
+                Node node = _root;
+                node._visits += 1;
+                _path[0] = node;
+                int length = 1;
+                while (length < _path.length) {
+                    if (node._moves == null) {
+                        long[] moves = new long[BitBoard.MAX_MOVES];
+                        int n = _board.moves(moves);
+                        node._moves = Arrays.copyOf(moves, n);
+                        node._children = new Node[n];
+                    }
+                    if (node._moves.length == 0) {
+                        break;
+                    }
+                    int i = node.select();
+                    Node child = node._children[i];
+                    if (child == null) {
+                        if (_root._visits > _maxNodes) {
+                            break;
+                        }
+                        child = node._children[i] = new Node(node._moves[i]);
+                    }
+                    _board.play(child._move);
+                    child._visits += 1;
+                    _path[length] = child;
+                    length += 1;
+                    node = child;
+                    if (child._visits == 1) {
+                        break;
+                    }
+                }
+                return length;
+            }
+        }
+
+        /**
+         * Play out a game from _board, choosing moves at random, except
+         * that a capture taking the most pieces is preferred, and return
+         * the winner, or EMPTY for a draw.
+         */
+        private PieceColor playout() {
+            for (int ply = 0; ply < PLAYOUT_LIMIT; ply += 1) {
+                int n = _board.moves(_moves);
+                if (n == 0) {
+                    return _board.whoseMove().opposite();
+                }
+                long mv = _moves[_random.nextInt(n)];
+                if (_board.jumpPossible()) {
+                    int most = 0, ties = 0;
+                    for (int i = 0; i < n; i += 1) {
+                        int taken =
+                            Integer.bitCount(BitBoard.captured(_moves[i]));
+                        if (taken > most) {
+                            most = taken;
+                            ties = 0;
+                        }
+                        if (taken == most) {
+                            ties += 1;
+                            if (_random.nextInt(ties) == 0) {
+                                mv = _moves[i];
+                            }
+                        }
+                    }
+                }
+                _board.play(mv);
+            }
+            int white = Integer.bitCount(_board.pieces(WHITE)),
+                black = Integer.bitCount(_board.pieces(BLACK));
+            return white > black ? WHITE : black > white ? BLACK : EMPTY;
+        }
+
+        /**
+         * Record a game won by WINNER (EMPTY for a draw) at the first
+         * LENGTH nodes of _path.
+         */
+        private void record(int length, PieceColor winner) {
+            synchronized (_lock) {
+                PieceColor mover = _rootPosition.whoseMove().opposite();
+                for (int i = 0; i < length; i += 1) {
+                    if (winner == mover) {
+                        _path[i]._wins += 1;
+                    } else if (winner == EMPTY) {
+                        _path[i]._wins += 0.5;
+                    }
+                    mover = mover.opposite();
+                }
+                _playouts += 1;
+            }
+        }
+
+        /**
+         * The position being played out.
+         */
+        private final BitBoard _board = new BitBoard();
+
+        /**
+         * Buffer for moves in playouts.
+         */
+        private final long[] _moves = new long[BitBoard.MAX_MOVES];
+
+        /**
+         * The nodes on the current path from the root.
+         */
+        private final Node[] _path = new Node[MAX_PATH];
+
+        /**
+         * Source of random moves.
+         */
+        private final Random _random;
+    }
+
+    /**
+     * Lock on the tree, held while it is read or changed.
+     */
+    private final Object _lock = new Object();
+
+    /**
+     * The root of the tree and the position there.
+     */
+    private Node _root;
+    /** See _root. */
+    private BitBoard _rootPosition;
+
+    /**
+     * The most nodes the tree may have.  The tree has at most one more
+     * node than its root has visits.
+     */
+    private int _maxNodes;
+
+    /**
+     * Number of iterations done for the current move.
+     */
+    private long _playouts;
+
+    /**
+     * The value of System.nanoTime at which to stop.
+     */
+    private volatile long _deadline;
+}
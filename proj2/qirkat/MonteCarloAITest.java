@@ -0,0 +1,65 @@
+package qirkat;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the MonteCarloAI class.
+ *
+ * @author Joshua Yurtsever
+ */
+public class MonteCarloAITest {
+
+    /** Return a new game on BOARD, with moves taking about 0.25 seconds. */
+    private static Game newGame(Board board) {
+        Game game = new Game(board, null, new TextReporter());
+        game.doTime(new String[] { "0.25" });
+        return game;
+    }
+
+    @Test
+    public void testOnlyMove() {
+        Board board = new Board();
+        Game game = newGame(board);
+        board.setPieces("w---- -b--- ----- ----- -----",
+                               PieceColor.WHITE);
+        MonteCarloAI ai = new MonteCarloAI(game, PieceColor.WHITE);
+        assertEquals(Move.move('a', '1', 'c', '3'), ai.findMove());
+        assertEquals(0, ai.playouts());
+    }
+
+    @Test
+    public void testTinyBudget() {
+        Board board = new Board();
+        Game game = newGame(board);
+        game.doTime(new String[] { "0.001" });
+        game.doThreads(new String[] { "16" });
+        for (int i = 0; i < 20; i += 1) {
+            MonteCarloAI ai = new MonteCarloAI(game, PieceColor.WHITE);
+            assertTrue(board.legalMove(ai.findMove()));
+            assertTrue(ai.playouts() > 0);
+        }
+    }
+
+    @Test
+    public void testTreeReuse() {
+        Board board = new Board();
+        Game game = newGame(board);
+        game.doThreads(new String[] { "2" });
+        MonteCarloAI ai = new MonteCarloAI(game, PieceColor.WHITE);
+        boolean searched = false;
+        for (int i = 0; i < 6; i += 1) {
+            boolean choice = board.getMoves().size() > 1;
+            Move mv = ai.findMove();
+            assertTrue(board.legalMove(mv));
+            assertEquals(choice, ai.playouts() > 0);
+            if (choice && searched) {
+                assertTrue(ai.rootVisits() > ai.playouts());
+            }
+            searched |= choice;
+            board.makeMove(mv);
+            board.makeMove(board.getMoves().get(0));
+        }
+    }
+}
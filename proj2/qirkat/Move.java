@@ -1,8 +1,7 @@
 package qirkat;
 
 import java.util.Formatter;
-import java.util.HashMap;
-import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -50,58 +49,74 @@ class Move {
      * one. Moves themselves are immutable, and for any possible move,
      * there is exactly one object of type Move. */
 
-    /* To avoid creating Move objects that are not needed, we maintain a
-     * a static variable, _staged containing a Move object.  The move
-     * factory methods then sets the fields of this object before looking to
-     * to see if there is already a Move object with the same parameters.
-     * If there is, the move methods will simply return it, thus allowing
-     * _staged to be reused on the next call without having to create a
-     * new Move object.  Otherwise, we use the _staged object itself as the
-     * new Move, and set the variable to null so that we create a new
-     * Move on the next call to move. There is a drawback: since there
-     * is at most one _staged object at any time, at most one call to move
-     * may execute simultaneously.  Otherwise, two the methods may attempt
-     * to use the same Move object for two different Moves, which clearly
-     * will not work.  Therefore, we indicate in the comments that a number
-     * of the operations are not "thread safe". Fortunately, you'll not run
-     * into this problem as long as you don't do anything fancy (such as
-     * trying to make your AI a parallel program).
-     */
-
-    /**
-     * The move constructor, made private to prevent its use except in
-     * this class.
-     */
-    private Move() {
+    /* Every single move or jump (one with no further jumps) is created
+     * when this class is loaded and kept in the table SINGLES, which never
+     * changes afterwards.  A multi-jump is determined by its first square
+     * and the rest of the jump, so each jump Move keeps, in _extensions,
+     * the multi-jumps that begin with one more jump onto its starting
+     * square, indexed by the square that jump starts from.  The factory
+     * looks a multi-jump up by walking from its last jump back to its
+     * first, and a missing entry is filled in with a single
+     * compareAndSet, so that if two threads race to create the same
+     * Move, both get the one that won.  Since Moves are immutable and
+     * their fields final, they may be shared freely between threads, and
+     * all of the factory methods are thread safe.  There is still exactly
+     * one Move object for each distinct move, which equals relies on.
+     *
+     * No legal capture takes more jumps than there are squares, so the
+     * factory refuses longer ones, which bounds the number of Moves it
+     * can ever create. */
+
+    /**
+     * The Move from COL0 ROW0 to COL1 ROW1 followed by NEXTJUMP.  Only
+     * the factory methods may create Moves.
+     */
+    private Move(char col0, char row0, char col1, char row1,
+                 Move nextJump) {
+        assert col0 >= 'a' && row0 >= '1' && col1 >= 'a' && row1 >= '1'
+                && col0 <= 'e' && row0 <= '5' && col1 <= 'e' && row1 <= '5';
+        _col0 = col0;
+        _row0 = row0;
+        _col1 = col1;
+        _row1 = row1;
+        _fromIndex = (byte) index(col0, row0);
+        _toIndex = (byte) index(col1, row1);
+        _isJump = abs(col0 - col1) > 1 || abs(row0 - row1) > 1;
+        _nextJump = nextJump;
+        _jumps = nextJump == null ? 1 : nextJump._jumps + 1;
+        _extensions =
+            _isJump ? new AtomicReferenceArray<>(MAX_INDEX + 1) : null;
     }
 
     /**
      * A factory method that returns a Move from COL0 ROW0 to COL1 ROW1,
      * followed by NEXTJUMP, if this move is a jump. Assumes the column
      * and row designations are valid and that NEXTJUMP is null for a
-     * non-capturing move.  Not thread-safe.
+     * non-capturing move.
      */
     static Move move(char col0, char row0, char col1, char row1,
                      Move nextJump) {
-        if (_staged == null) {
-            _staged = new Move();
+        Move first = SINGLES[index(col0, row0)][index(col1, row1)];
+        if (nextJump == null) {
+            return first;
         }
-        _staged.set(col0, row0, col1, row1, nextJump);
-        if (_staged.isJump() && nextJump != null && !nextJump.isJump()) {
-            throw new IllegalArgumentException("bad jump");
-        } else if (!_staged.isJump() && nextJump != null) {
+        if (!first.isJump() || !nextJump.isJump()
+            || first._toIndex != nextJump._fromIndex
+            || nextJump._jumps > MAX_INDEX) {
             throw new IllegalArgumentException("bad jump");
         }
-        Move result = _internedMoves.computeIfAbsent(_staged, IDENTITY);
-        if (result == _staged) {
-            _staged = null;
+        int k = first._fromIndex;
+        Move result = nextJump._extensions.get(k);
+        if (result == null) {
+            nextJump._extensions.compareAndSet(k, null,
+                new Move(col0, row0, col1, row1, nextJump));
+            result = nextJump._extensions.get(k);
         }
         return result;
     }
 
     /**
      * Return a single move or jump from (COL0, ROW0) to (COL1, ROW1).
-     * Not thread-safe.
      */
     static Move move(char col0, char row0, char col1, char row1) {
         return move(col0, row0, col1, row1, null);
@@ -219,7 +234,7 @@ class Move {
      * the left.
      */
     boolean isLeftMove() {
-        return !isJump() && col1() < col0();
+        return !isJump() && row1() == row0() && col1() < col0();
     }
 
     /**
@@ -227,7 +242,7 @@ class Move {
      * to the right.
      */
     boolean isRightMove() {
-        return !isJump() && col1() > col0();
+        return !isJump() && row1() == row0() && col1() > col0();
     }
 
     /**
@@ -343,7 +358,6 @@ class Move {
         if (result == null) {
             throw new IllegalArgumentException("bad move denotation");
         }
-        result._stringRep = str;
         return result;
     }
 
@@ -376,70 +390,55 @@ class Move {
         }
     }
 
-    /**
-     * Set me to COL0 ROW0 - COL1 ROW1 - NEXTJUMP.
-     */
-    private void set(char col0, char row0, char col1, char row1,
-                     Move nextJump) {
-        assert col0 >= 'a' && row0 >= '1' && col1 >= 'a' && row1 >= '1'
-                && col0 <= 'e' && row0 <= '5' && col1 <= 'e' && row1 <= '5';
-        _col0 = col0;
-        _row0 = row0;
-        _col1 = col1;
-        _row1 = row1;
-        _fromIndex = (byte) index(col0, row0);
-        _toIndex = (byte) index(col1, row1);
-        _isJump = abs(col0 - col1) > 1 || abs(row0 - row1) > 1;
-        _nextJump = nextJump;
-        assert (_isJump
-                && (nextJump == null
-                || (nextJump.isJump()
-                && col1 == nextJump.col0()
-                && row1 == nextJump.row0())))
-                || (!_isJump && nextJump == null);
-    }
-
     /**
      * Linearized indices.
      */
-    private byte _fromIndex, _toIndex;
+    private final byte _fromIndex, _toIndex;
 
     /**
      * True iff move is a jump.
      */
-    private boolean _isJump;
+    private final boolean _isJump;
 
     /**
      * From and to squares, or 0s if a pass.
      */
-    private char _col0, _row0, _col1, _row1;
+    private final char _col0, _row0, _col1, _row1;
 
     /**
      * For a jump, the Move representing the jumps following the
      * initial jump.
      */
-    private Move _nextJump;
-    /* Used for the Move factory. */
-    /**
-     * Stores my string representation.
-     */
-    private String _stringRep;
+    private final Move _nextJump;
 
     /**
-     * Holds the next Move object to be added to _internedMoves.
-     * The factory method move tentatively fills it in, and then returns
-     * it if it is unique (resetting _staged to null).
+     * The number of single moves or jumps making up this Move.
      */
-    private static Move _staged;
+    private final int _jumps;
+
+    /* Used for the Move factory. */
 
     /**
-     * The set of all distinct moves generated so far.
+     * For a jump, the multi-jumps that start with a jump from square K
+     * to my starting square and then continue with me, at index K, as
+     * they are created.  Null for a non-capturing move.
      */
-    private static HashMap<Move, Move> _internedMoves = new HashMap<>();
+    private final AtomicReferenceArray<Move> _extensions;
 
     /**
-     * The identity function on Moves.
+     * SINGLES[J][K] is the Move from the square with linearized index J
+     * to the one with index K that has no further jumps.
      */
-    static final Function<Move, Move> IDENTITY = k -> k;
+    private static final Move[][] SINGLES =
+        new Move[MAX_INDEX + 1][MAX_INDEX + 1];
+
+    static {
+        for (int j = 0; j <= MAX_INDEX; j += 1) {
+            for (int k = 0; k <= MAX_INDEX; k += 1) {
+                SINGLES[j][k] = new Move(col(j), row(j), col(k), row(k),
+                                         null);
+            }
+        }
+    }
 
 }
@@ -41,4 +41,44 @@ public class MoveTest {
         assertEquals("a3-a5-c3", parseMove("a3-a5-c3").toString());
         assertEquals("a3-a5-c3-e1", parseMove("a3-a5-c3-e1").toString());
     }
+
+    @Test
+    public void testUnique() {
+        assertSame(move('a', '3', 'b', '2'), parseMove("a3-b2"));
+        assertSame(parseMove("a3-a5-c3-e1"),
+                   move(move('a', '3', 'a', '5'), parseMove("a5-c3-e1")));
+        assertSame(parseMove("c3-c5-c3").jumpTail(), parseMove("c5-c3"));
+    }
+
+    @Test
+    public void testConcurrentFactory() throws InterruptedException {
+        final String[] jumps = {
+            "a1-a3-c3-c1-a1", "a1-c1-c3-a3-a1", "c3-a1-a3-c5", "e5-c3-e1"
+        };
+        final Move[][] made = new Move[8][jumps.length];
+        Thread[] threads = new Thread[made.length];
+        for (int t = 0; t < threads.length; t += 1) {
+            final int me = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < jumps.length; i += 1) {
+                    made[me][i] = parseMove(jumps[i]);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < jumps.length; i += 1) {
+            for (int t = 0; t < made.length; t += 1) {
+                assertSame(made[0][i], made[t][i]);
+            }
+            assertEquals(jumps[i], made[0][i].toString());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadJump() {
+        move('a', '3', 'a', '5', move('b', '5', 'b', '3'));
+    }
 }
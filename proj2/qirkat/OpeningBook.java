@@ -0,0 +1,287 @@
+package qirkat;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * An opening book: moves worth playing in positions near the start of
+ * the game, with weights, kept in a file and read through a memory
+ * mapping.
+ *
+ * The file is a sequence of records of RECORD_BYTES bytes, each holding
+ * a position's canonical key (see BitBoard.canonicalKey), an encoded
+ * move for the side to move there, as it is in the image of the position
+ * that has that key, and the move's weight, a positive int, all
+ * big-endian.  So a position and its mirror image, or the same position
+ * with the colors exchanged, share their records.  The
+ * records are sorted by key, and those with the same key by decreasing
+ * weight, so that the moves for a position are found by binary search.
+ * A move is chosen from among them with probability proportional to its
+ * weight.  Since keys are hashes, a move is played only if it is legal.
+ *
+ * BookBuilder builds and extends books.
+ *
+ * @author Joshua Yurtsever
+ */
+final class OpeningBook {
+
+    /**
+     * Number of bytes in each record.
+     */
+    static final int RECORD_BYTES = 20;
+
+    /**
+     * An empty book.
+     */
+    OpeningBook() {
+        _records = null;
+        _size = 0;
+    }
+
+    /**
+     * Return the book in FILE, which must not have a record whose weight
+     * is not positive.
+     */
+    static OpeningBook open(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+             FileChannel channel = in.getChannel()) {
+            long bytes = channel.size();
+            if (bytes % RECORD_BYTES != 0 || bytes > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not an opening book");
+            }
+            OpeningBook result =
+                new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY,
+                                            0, bytes));
+            for (int i = 0; i < result._size; i += 1) {
+                if (result.weight(i) <= 0) {
+                    throw new IOException(file + " has a record of weight "
+                                          + result.weight(i));
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A book whose records are in RECORDS.
+     */
+    private OpeningBook(MappedByteBuffer records) {
+        _records = records;
+        _size = records.capacity() / RECORD_BYTES;
+    }
+
+    /**
+     * Return the number of records in me.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Return a legal encoded move from my moves for POSITION, chosen at
+     * random in proportion to their weights, using RANDOM, which
+     * returns a number from 0 up to (not including) its argument.
+     * Return 0 if I have no legal move for POSITION.  When the weights
+     * add up to more than an int holds, RANDOM's result is scaled up to
+     * their sum, so that the choice is proportional to within one part
+     * in 2^31.
+     */
+    long choose(BitBoard position, IntUnaryOperator random) {
+        long[] legal = new long[BitBoard.MAX_MOVES];
+        int n = position.moves(legal);
+        int symmetry = position.canonicalSymmetry();
+        List<Long> choices = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        long total = 0;
+        for (Entry entry : lookup(position.key(symmetry))) {
+            long mv = BitBoard.transform(entry._move, symmetry);
+            for (int i = 0; i < n; i += 1) {
+                if (legal[i] == mv) {
+                    choices.add(mv);
+                    weights.add(entry._weight);
+                    total += entry._weight;
+                    break;
+                }
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        int bound = (int) Math.min(total, Integer.MAX_VALUE);
+        long r = random.applyAsInt(bound);
+        if (total > bound) {
+            r = Math.min((long) (r * ((double) total / bound)), total - 1);
+        }
+        for (int i = 0; i < choices.size(); i += 1) {
+            r -= weights.get(i);
+            if (r < 0) {
+                return choices.get(i);
+            }
+        }
+        throw new AssertionError("weights do not add up");
+    }
+
+    /**
+     * Return my records for the position with key KEY, heaviest first.
+     */
+    List<Entry> lookup(long key) {
+        int lo = 0, hi = _size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        List<Entry> result = new ArrayList<>();
+        for (int i = lo; i < _size && key(i) == key; i += 1) {
+            result.add(entry(i));
+        }
+        return result;
+    }
+
+    /**
+     * Return all my records, in order.
+     */
+    List<Entry> entries() {
+        List<Entry> result = new ArrayList<>();
+        for (int i = 0; i < _size; i += 1) {
+            result.add(entry(i));
+        }
+        return result;
+    }
+
+    /**
+     * Write ENTRIES, in order, to FILE as a book, replacing it only once
+     * the book is complete.
+     */
+    static void write(File file, List<Entry> entries) throws IOException {
+        entries = new ArrayList<>(entries);
+        Collections.sort(entries);
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(
+                 new FileOutputStream(temp)))) {
+            for (Entry entry : entries) {
+                out.writeLong(entry._key);
+                out.writeLong(entry._move);
+                out.writeInt(entry._weight);
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Return the key of record I.
+     */
+    private long key(int i) {
+        return _records.getLong(i * RECORD_BYTES);
+    }
+
+    /**
+     * Return the weight of record I.
+     */
+    private int weight(int i) {
+        return _records.getInt(i * RECORD_BYTES + 16);
+    }
+
+    /**
+     * Return record I.
+     */
+    private Entry entry(int i) {
+        int offset = i * RECORD_BYTES;
+        return new Entry(_records.getLong(offset),
+                         _records.getLong(offset + 8),
+                         weight(i));
+    }
+
+    /**
+     * One record of a book: a move for a position and its weight.
+     */
+    static final class Entry implements Comparable<Entry> {
+
+        /**
+         * A record of encoded move MOVE with weight WEIGHT (positive) for
+         * the position with key KEY.
+         */
+        Entry(long key, long move, int weight) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("weight must be positive");
+            }
+            _key = key;
+            _move = move;
+            _weight = weight;
+        }
+
+        /**
+         * Return the key of my position.
+         */
+        long key() {
+            return _key;
+        }
+
+        /**
+         * Return my encoded move.
+         */
+        long move() {
+            return _move;
+        }
+
+        /**
+         * Return my weight.
+         */
+        int weight() {
+            return _weight;
+        }
+
+        /**
+         * Records are ordered by key, and then by decreasing weight.
+         */
+        @Override
+        public int compareTo(Entry other) {
+            if (_key != other._key) {
+                return Long.compare(_key, other._key);
+            }
+            return Integer.compare(other._weight, _weight);
+        }
+
+        /**
+         * The key of my position.
+         */
+        private final long _key;
+
+        /**
+         * My encoded move.
+         */
+        private final long _move;
+
+        /**
+         * My weight.
+         */
+        private final int _weight;
+    }
+
+    /**
+     * My records, or null if I am empty.
+     */
+    private final MappedByteBuffer _records;
+
+    /**
+     * Number of records.
+     */
+    private final int _size;
+}
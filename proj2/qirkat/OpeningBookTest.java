@@ -0,0 +1,159 @@
+package qirkat;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the OpeningBook and BookBuilder classes.
+ *
+ * @author Joshua Yurtsever
+ */
+public class OpeningBookTest {
+
+    /** Return a book in a temporary file holding ENTRIES. */
+    private static OpeningBook book(OpeningBook.Entry... entries)
+        throws IOException {
+        File file = File.createTempFile("qirkat", ".book");
+        file.deleteOnExit();
+        OpeningBook.write(file, Arrays.asList(entries));
+        return OpeningBook.open(file);
+    }
+
+    /** Return the legal encoded moves in POSITION. */
+    private static long[] moves(BitBoard position) {
+        long[] moves = new long[BitBoard.MAX_MOVES];
+        return Arrays.copyOf(moves, position.moves(moves));
+    }
+
+    @Test
+    public void testLookup() throws IOException {
+        OpeningBook book =
+            book(new OpeningBook.Entry(7, 1, 2),
+                 new OpeningBook.Entry(-3, 4, 1),
+                 new OpeningBook.Entry(7, 2, 5),
+                 new OpeningBook.Entry(12, 3, 1));
+        assertEquals(4, book.size());
+        List<OpeningBook.Entry> found = book.lookup(7);
+        assertEquals(2, found.size());
+        assertEquals(2, found.get(0).move());
+        assertEquals(5, found.get(0).weight());
+        assertEquals(1, found.get(1).move());
+        assertEquals(4, book.lookup(-3).get(0).move());
+        assertTrue(book.lookup(8).isEmpty());
+        assertTrue(new OpeningBook().lookup(7).isEmpty());
+        List<Long> keys = new ArrayList<>();
+        for (OpeningBook.Entry entry : book.entries()) {
+            keys.add(entry.key());
+        }
+        assertEquals(Arrays.asList(-3L, 7L, 7L, 12L), keys);
+    }
+
+    @Test
+    public void testChoose() throws IOException {
+        BitBoard start = new Board().position();
+        long[] legal = moves(start);
+        int sym = start.canonicalSymmetry();
+        long key = start.canonicalKey();
+        OpeningBook book =
+            book(new OpeningBook.Entry(key,
+                                       BitBoard.transform(legal[0], sym), 1),
+                 new OpeningBook.Entry(key,
+                                       BitBoard.transform(legal[1], sym), 3),
+                 new OpeningBook.Entry(key, BitBoard.encode(0, 24, 0), 9));
+        assertEquals(legal[1], book.choose(start, (n) -> 0));
+        assertEquals(legal[1], book.choose(start, (n) -> 2));
+        assertEquals(legal[0], book.choose(start, (n) -> n - 1));
+        BitBoard image = new BitBoard();
+        image.setImage(start, BitBoard.MIRROR);
+        assertEquals(BitBoard.transform(legal[1], BitBoard.MIRROR),
+                     book.choose(image, (n) -> 0));
+        start.play(legal[0]);
+        assertEquals(0, book.choose(start, (n) -> 0));
+    }
+
+    @Test
+    public void testHeavyWeights() throws IOException {
+        BitBoard start = new Board().position();
+        long[] legal = moves(start);
+        int sym = start.canonicalSymmetry();
+        long key = start.canonicalKey();
+        OpeningBook book =
+            book(new OpeningBook.Entry(key, BitBoard.transform(legal[0], sym),
+                                       Integer.MAX_VALUE),
+                 new OpeningBook.Entry(key, BitBoard.transform(legal[1], sym),
+                                       Integer.MAX_VALUE));
+        long first = book.choose(start, (n) -> 0),
+            last = book.choose(start, (n) -> {
+                    assertEquals(Integer.MAX_VALUE, n);
+                    return n - 1;
+                });
+        assertTrue(first == legal[0] || first == legal[1]);
+        assertTrue(last == legal[0] || last == legal[1]);
+        assertNotEquals(first, last);
+    }
+
+    @Test
+    public void testBadWeightsRejected() throws IOException {
+        for (int weight : new int[] { 0, -1, Integer.MIN_VALUE }) {
+            File file = File.createTempFile("qirkat", ".book");
+            file.deleteOnExit();
+            try (DataOutputStream out =
+                 new DataOutputStream(new FileOutputStream(file))) {
+                out.writeLong(7);
+                out.writeLong(1);
+                out.writeInt(1);
+                out.writeLong(8);
+                out.writeLong(2);
+                out.writeInt(weight);
+            }
+            try {
+                OpeningBook.open(file);
+                fail("accepted weight " + weight);
+            } catch (IOException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void testAIPlaysFromBook() throws IOException {
+        Board board = new Board();
+        Game game = new Game(board, null, new TextReporter());
+        long[] legal = moves(board.position());
+        File file = File.createTempFile("qirkat", ".book");
+        file.deleteOnExit();
+        int sym = board.position().canonicalSymmetry();
+        OpeningBook.write(file, Arrays.asList(
+            new OpeningBook.Entry(board.position().canonicalKey(),
+                                  BitBoard.transform(legal[2], sym), 1)));
+        game.doBook(new String[] { file.getPath() });
+        AI ai = new AI(game, PieceColor.WHITE, false);
+        assertEquals(board.toMove(legal[2]), ai.findMove());
+        assertEquals(0, ai.nodes());
+    }
+
+    @Test
+    public void testBuild() {
+        List<OpeningBook.Entry> entries =
+            BookBuilder.build(new ArrayList<>(), 1, 2, 1, 2);
+        BitBoard start = new Board().position();
+        assertFalse(entries.isEmpty());
+        for (OpeningBook.Entry entry : entries) {
+            assertEquals(start.canonicalKey(), entry.key());
+            assertTrue(entry.weight() > 0);
+            long mv = BitBoard.transform(entry.move(),
+                                         start.canonicalSymmetry());
+            assertTrue(Arrays.stream(moves(start)).anyMatch((m) -> m == mv));
+        }
+        assertTrue(BookBuilder.build(entries, 1, 2, 1, 2).isEmpty());
+    }
+}
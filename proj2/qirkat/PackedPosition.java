@@ -0,0 +1,184 @@
+package qirkat;
+
+import static qirkat.PieceColor.*;
+
+/**
+ * The packed encoding of Qirkat positions, for storing large numbers of
+ * them.  A position packs into two longs.  The first holds the contents
+ * of the board, two bits per square: bits 2K and 2K+1 hold the ordinal
+ * of the PieceColor on the square with linearized index K (0 for empty,
+ * 1 for white, 2 for black).  Bit 50 of the first long is set iff Black
+ * is to move.  The second long holds the horizontal-move restrictions as
+ * packed by BitBoard.restrictions(), and is 0 for a position that
+ * Board.setPieces sets up on a clear board.
+ *
+ * Both longs are canonical: two positions are equal iff their packed
+ * forms are.  Board.setPacked accepts only such forms, rejecting
+ * restrictions on empty squares and squares barred from moving both
+ * left and right.
+ *
+ * @author Joshua Yurtsever
+ */
+final class PackedPosition {
+
+    /**
+     * The bit of a packed board that marks Black to move.
+     */
+    static final long BLACK_TO_MOVE = 1L << (2 * BitBoard.SQUARES);
+
+    /**
+     * The low-order bits of the two-bit fields of all squares.
+     */
+    private static final long LOW_BITS = 0x5555555555555555L
+        & (BLACK_TO_MOVE - 1);
+
+    /**
+     * Not instantiable.
+     */
+    private PackedPosition() {
+    }
+
+    /**
+     * Return the packed board with the pieces in the masks WHITE and
+     * BLACK (as for BitBoard.pieces) and SIDE to move.
+     */
+    static long pack(int white, int black, PieceColor side) {
+        long result = spread(white) | (spread(black) << 1);
+        return side == BLACK ? result | BLACK_TO_MOVE : result;
+    }
+
+    /**
+     * Return the mask of white pieces on the packed board SQUARES.
+     */
+    static int white(long squares) {
+        return compact(squares & ~(squares >>> 1));
+    }
+
+    /**
+     * Return the mask of black pieces on the packed board SQUARES.
+     */
+    static int black(long squares) {
+        return compact((squares >>> 1) & ~squares);
+    }
+
+    /**
+     * Return the side to move on the packed board SQUARES.
+     */
+    static PieceColor whoseMove(long squares) {
+        return (squares & BLACK_TO_MOVE) == 0 ? WHITE : BLACK;
+    }
+
+    /**
+     * Return the contents of the square with linearized index K on the
+     * packed board SQUARES.
+     */
+    static PieceColor get(long squares, int k) {
+        return Board.PIECE_VALUES[(int) (squares >>> (2 * k)) & 3];
+    }
+
+    /**
+     * Return true iff SQUARES is a packed board: no square has both bits
+     * set, and no bit above the side-to-move bit is set.
+     */
+    static boolean isValid(long squares) {
+        return (squares & (squares >>> 1) & LOW_BITS) == 0
+            && (squares & ~(2 * BLACK_TO_MOVE - 1)) == 0;
+    }
+
+    /**
+     * Return true iff RESTRICTIONS is a packed set of restrictions for the
+     * packed board SQUARES: every restricted square is occupied, no square
+     * is barred from moving both left and right, and no bit above those of
+     * the two masks is set.
+     */
+    static boolean isValidRestrictions(long squares, long restrictions) {
+        long noLeft = restrictions & ((1L << BitBoard.SQUARES) - 1);
+        long noRight = restrictions >>> BitBoard.SQUARES;
+        long occupied = white(squares) | black(squares);
+        return (noRight >>> BitBoard.SQUARES) == 0
+            && (noLeft & noRight) == 0
+            && ((noLeft | noRight) & ~occupied) == 0;
+    }
+
+    /**
+     * Return the contents of the packed board SQUARES in the form taken
+     * by Board.setPieces: 25 characters b, w, or -, row 1 first, with a
+     * space between rows.
+     */
+    static String toSpec(long squares) {
+        StringBuilder out = new StringBuilder();
+        for (int k = 0; k < BitBoard.SQUARES; k += 1) {
+            if (k > 0 && k % Move.SIDE == 0) {
+                out.append(' ');
+            }
+            out.append(get(squares, k).shortName());
+        }
+        return out.toString();
+    }
+
+    /**
+     * Return the 'set' command that sets up the packed board SQUARES.
+     */
+    static String toSetCommand(long squares) {
+        return String.format("set %s %s",
+                             whoseMove(squares).toString().toLowerCase(),
+                             toSpec(squares));
+    }
+
+    /**
+     * Return the packed board described by SPEC, in the format taken by
+     * Board.setPieces, with SIDE to move.
+     */
+    static long fromSpec(String spec, PieceColor side) {
+        if (side == EMPTY || side == null) {
+            throw new IllegalArgumentException("bad player color");
+        }
+        spec = spec.replaceAll("\\s", "");
+        if (!spec.matches("[bwBW-]{25}")) {
+            throw new IllegalArgumentException("bad board description");
+        }
+        long result = side == BLACK ? BLACK_TO_MOVE : 0;
+        for (int k = 0; k < BitBoard.SQUARES; k += 1) {
+            switch (spec.charAt(k)) {
+            case 'w':
+            case 'W':
+                result |= (long) WHITE.ordinal() << (2 * k);
+                break;
+            case 'b':
+            case 'B':
+                result |= (long) BLACK.ordinal() << (2 * k);
+                break;
+            default:
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return X with bit K moved to bit 2K, for 0 <= K < 32.
+     */
+    private static long spread(int x) {
+        long r = x & 0xffffffffL;
+        r = (r | (r << 16)) & 0x0000ffff0000ffffL;
+        r = (r | (r << 8)) & 0x00ff00ff00ff00ffL;
+        r = (r | (r << 4)) & 0x0f0f0f0f0f0f0f0fL;
+        r = (r | (r << 2)) & 0x3333333333333333L;
+        r = (r | (r << 1)) & 0x5555555555555555L;
+        return r;
+    }
+
+    /**
+     * Return the mask of squares K for which bit 2K of X is set.  This
+     * is the inverse of spread for the squares of the board.
+     */
+    private static int compact(long x) {
+        long r = x & LOW_BITS;
+        r = (r | (r >>> 1)) & 0x3333333333333333L;
+        r = (r | (r >>> 2)) & 0x0f0f0f0f0f0f0f0fL;
+        r = (r | (r >>> 4)) & 0x00ff00ff00ff00ffL;
+        r = (r | (r >>> 8)) & 0x0000ffff0000ffffL;
+        r = (r | (r >>> 16)) & 0x00000000ffffffffL;
+        return (int) r;
+    }
+}
@@ -31,6 +31,17 @@ abstract class Player {
      *  board.whoseMove() == myColor and that !board.gameOver(). */
     abstract Move myMove();
 
+    /** Called when my opponent is about to choose its move, so that I
+     *  may think on its time.  By default, does nothing. */
+    void startPondering() {
+    }
+
+    /** Called when my opponent has chosen its move, or given up
+     *  choosing, to end any thinking begun by startPondering.  By
+     *  default, does nothing. */
+    void stopPondering() {
+    }
+
     /** The game I am playing in. */
     private final Game _game;
     /** The color of my pieces. */
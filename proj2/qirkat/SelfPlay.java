@@ -0,0 +1,383 @@
+package qirkat;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import static qirkat.PieceColor.*;
+
+/**
+ * Games of the AI against itself, played several at a time on separate
+ * threads, both to collect positions for Tuner and to compare
+ * evaluations.  Each game starts with OPENING_PLIES random moves, chosen
+ * from a seed, and is then played by AIs searching to a fixed depth,
+ * except that each move is a random one with probability RANDOM_MOVES.
+ * Captures being forced, there are few openings, and without the random
+ * moves most games would repeat others.  A game that has not ended after
+ * MAX_PLIES plies counts as a draw.
+ *
+ * Run on its own, plays GAMES games with the default evaluation and
+ * writes to FILE each position after the opening in which the side to
+ * move has a move but no capture, one to a line: the packed board and
+ * restrictions (see BitBoard.packed and BitBoard.restrictions) in
+ * hexadecimal, and the result for White (1 for a win, 0 for a loss,
+ * 0.5 for a draw).
+ *
+ * Usage: java qirkat.SelfPlay GAMES FILE [DEPTH [THREADS]]
+ *
+ * With -full, instead plays PAIRS pairs of games (see match) between the
+ * selective search (see AI.setSelective) and the full-width one, both with
+ * the default evaluation, searching to DEPTH and for at most MSEC
+ * milliseconds a move (unlimited if 0), and reports the selective
+ * search's score.  To compare them at equal time, give a DEPTH of
+ * AI.MAX_DEPTH.
+ *
+ * Usage: java qirkat.SelfPlay -full PAIRS [DEPTH [MSEC [THREADS]]]
+ *
+ * @author Joshua Yurtsever
+ */
+final class SelfPlay {
+
+    /**
+     * Depth searched unless given on the command line.
+     */
+    static final int DEFAULT_DEPTH = 6;
+
+    /**
+     * Number of random moves at the start of each game.
+     */
+    static final int OPENING_PLIES = 4;
+
+    /**
+     * The chance that a move after the opening is chosen at random.
+     */
+    static final double RANDOM_MOVES = 0.1;
+
+    /**
+     * Number of plies after the opening after which a game is a draw.
+     */
+    static final int MAX_PLIES = 200;
+
+    /**
+     * Milliseconds allowed for a move when searches are limited only by
+     * depth: effectively unlimited.
+     */
+    static final long UNLIMITED = 100000;
+
+    /**
+     * Size in megabytes of each AI's transposition table.
+     */
+    private static final int HASH_MEGABYTES = 4;
+
+    /**
+     * Not instantiable.
+     */
+    private SelfPlay() {
+    }
+
+    /**
+     * Play the games described by ARGS (see the class comment) and write
+     * out their positions.
+     */
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("-full")) {
+            fullWidthMatch(args);
+            return;
+        }
+        if (args.length < 2 || args.length > 4) {
+            usage();
+        }
+        int games = intArgument(args, 0, 0),
+            depth = intArgument(args, 2, DEFAULT_DEPTH),
+            threads = intArgument(args, 3, 1);
+        if (games <= 0 || depth <= 0 || threads <= 0) {
+            usage();
+        }
+
+        Evaluation eval = Evaluation.DEFAULT;
+        List<List<String>> records = new ArrayList<>();
+        for (int g = 0; g < games; g += 1) {
+            records.add(new ArrayList<>());
+        }
+        double[] results = new double[games];
+        parallel(games, threads, (g) -> {
+            results[g] = play(eval, eval, depth, g, records.get(g));
+        });
+
+        int positions, whiteWins, blackWins;
+        positions = whiteWins = blackWins = 0;
+        try (PrintWriter out = new PrintWriter(new FileWriter(args[1]))) {
+            for (int g = 0; g < games; g += 1) {
+                for (String position : records.get(g)) {
+                    out.printf("%s %s%n", position, results[g]);
+                    positions += 1;
+                }
+                if (results[g] == 1) {
+                    whiteWins += 1;
+                } else if (results[g] == 0) {
+                    blackWins += 1;
+                }
+            }
+        } catch (IOException excp) {
+            System.err.printf("Cannot write %s: %s%n", args[1],
+                              excp.getMessage());
+            System.exit(1);
+        }
+        System.out.printf("%d games (White won %d, Black %d, %d drawn), "
+                          + "%d positions%n", games, whiteWins, blackWins,
+                          games - whiteWins - blackWins, positions);
+    }
+
+    /**
+     * Play the match between the selective and full-width searches
+     * described by ARGS (see the class comment) and report the result.
+     */
+    private static void fullWidthMatch(String[] args) {
+        if (args.length < 2 || args.length > 5) {
+            usage();
+        }
+        int pairs = intArgument(args, 1, 0),
+            depth = intArgument(args, 2, DEFAULT_DEPTH),
+            msec = intArgument(args, 3, 0),
+            threads = intArgument(args, 4, 1);
+        if (pairs <= 0 || depth <= 0 || depth > AI.MAX_DEPTH || msec < 0
+            || threads <= 0) {
+            usage();
+        }
+        Evaluation eval = Evaluation.DEFAULT;
+        double score =
+            match(new Contestant(eval, true, depth),
+                  new Contestant(eval, false, depth), pairs,
+                  msec == 0 ? UNLIMITED : msec, threads);
+        System.out.printf("Selective against full width, depth %d, %s: "
+                          + "%.1f-%.1f%n", depth,
+                          msec == 0 ? "no time limit" : msec + " msec/move",
+                          score, 2 * pairs - score);
+    }
+
+    /**
+     * Play PAIRS pairs of games between evaluations A and B, searching
+     * to DEPTH, using THREADS threads, as for match(Contestant,
+     * Contestant, int, long, int).  Return A's score.
+     */
+    static double match(Evaluation a, Evaluation b, int pairs, int depth,
+                        int threads) {
+        return match(new Contestant(a, true, depth),
+                     new Contestant(b, true, depth), pairs, UNLIMITED,
+                     threads);
+    }
+
+    /**
+     * Play PAIRS pairs of games between A and B, allowing MSEC
+     * milliseconds a move, using THREADS threads.  The games of each pair
+     * start with the same opening, with A playing White in one and Black
+     * in the other.  Return A's score: 1 for each win and 1/2 for each
+     * draw.
+     */
+    static double match(Contestant a, Contestant b, int pairs, long msec,
+                        int threads) {
+        double[] scores = new double[2 * pairs];
+        parallel(2 * pairs, threads, (g) -> {
+            if (g % 2 == 0) {
+                scores[g] = play(null, a, b, msec, g / 2, null);
+            } else {
+                scores[g] = 1 - play(null, b, a, msec, g / 2, null);
+            }
+        });
+        double total;
+        total = 0;
+        for (double score : scores) {
+            total += score;
+        }
+        return total;
+    }
+
+    /**
+     * Play a game whose opening is chosen by SEED, with White evaluating
+     * positions with WHITE and Black with BLACK, searching to DEPTH.
+     * Unless RECORD is null, add to it each quiet position after the
+     * opening (as described in the class comment).  Return the result
+     * for White.
+     */
+    static double play(Evaluation white, Evaluation black, int depth,
+                       long seed, List<String> record) {
+        return play(null, white, black, depth, seed, record);
+    }
+
+    /**
+     * Play a game as for play(WHITE, BLACK, DEPTH, SEED, RECORD), but
+     * starting from START, with no random opening, unless START is
+     * null.
+     */
+    static double play(BitBoard start, Evaluation white, Evaluation black,
+                       int depth, long seed, List<String> record) {
+        return play(start, new Contestant(white, true, depth),
+                    new Contestant(black, true, depth), UNLIMITED, seed,
+                    record);
+    }
+
+    /**
+     * Play a game as for play(START, WHITE, BLACK, DEPTH, SEED, RECORD),
+     * but with White searching as WHITE says and Black as BLACK says,
+     * allowing MSEC milliseconds a move.
+     */
+    static double play(BitBoard start, Contestant white, Contestant black,
+                       long msec, long seed, List<String> record) {
+        Board board = new Board();
+        Game game = newGame(board, msec);
+        AI whiteAI = white.newAI(game, WHITE),
+            blackAI = black.newAI(game, BLACK);
+
+        SplittableRandom random = new SplittableRandom(seed);
+        int opening = OPENING_PLIES;
+        if (start != null) {
+            board.setPacked(start.packed(), start.restrictions());
+            board.checkGameOver();
+            opening = 0;
+        }
+        for (int ply = 0; ply < opening && !board.gameOver(); ply += 1) {
+            List<Move> moves = board.getMoves();
+            board.makeMove(moves.get(random.nextInt(moves.size())));
+            board.checkGameOver();
+        }
+        for (int ply = 0; ply < MAX_PLIES && !board.gameOver(); ply += 1) {
+            BitBoard position = board.position();
+            if (record != null && !position.jumpPossible()) {
+                record.add(String.format("%x %x", position.packed(),
+                                         position.restrictions()));
+            }
+            AI player = board.whoseMove() == WHITE ? whiteAI : blackAI;
+            if (random.nextDouble() < RANDOM_MOVES) {
+                List<Move> moves = board.getMoves();
+                board.makeMove(moves.get(random.nextInt(moves.size())));
+            } else {
+                board.makeMove(player.findMove());
+            }
+            board.checkGameOver();
+        }
+        if (!board.gameOver()) {
+            return 0.5;
+        }
+        return board.whoseMove() == WHITE ? 0 : 1;
+    }
+
+    /**
+     * Return a game on BOARD for AIs that search to a fixed depth, with
+     * no limit on their time.
+     */
+    static Game newGame(Board board) {
+        return newGame(board, UNLIMITED);
+    }
+
+    /**
+     * Return a game on BOARD for AIs allowed MSEC milliseconds a move.
+     */
+    private static Game newGame(Board board, long msec) {
+        Game game = new Game(board, (prompt) -> null, new TextReporter());
+        game.doTime(new String[] { Double.toString(msec / 1000.0) });
+        game.doHash(new String[] { Integer.toString(HASH_MEGABYTES) });
+        return game;
+    }
+
+    /**
+     * Call TASK on each of 0 .. N-1, using THREADS threads, and wait for
+     * them all to finish.
+     */
+    static void parallel(int n, int threads, IntConsumer task) {
+        AtomicInteger next = new AtomicInteger();
+        Thread[] workers = new Thread[Math.min(n, threads)];
+        for (int t = 0; t < workers.length; t += 1) {
+            workers[t] = new Thread(() -> {
+                for (int i = next.getAndIncrement(); i < n;
+                     i = next.getAndIncrement()) {
+                    task.accept(i);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            while (worker.isAlive()) {
+                try {
+                    worker.join();
+                } catch (InterruptedException excp) {
+                    continue;
+                }
+            }
+        }
+    }
+
+    /**
+     * Return ARGS[I] as a number, or DFLT if there are not that many
+     * arguments, or -1 if ARGS[I] is not a number.
+     */
+    static int intArgument(String[] args, int i, int dflt) {
+        if (i >= args.length) {
+            return dflt;
+        }
+        try {
+            return Integer.parseInt(args[i]);
+        } catch (NumberFormatException excp) {
+            return -1;
+        }
+    }
+
+    /**
+     * Print a usage message and exit.
+     */
+    private static void usage() {
+        System.err.println("Usage: java qirkat.SelfPlay GAMES FILE "
+                           + "[DEPTH [THREADS]]");
+        System.err.println("       java qirkat.SelfPlay -full PAIRS "
+                           + "[DEPTH [MSEC [THREADS]]]");
+        System.exit(1);
+    }
+
+    /**
+     * How one side of a game searches: the evaluation it uses, whether
+     * its search is selective, and the depth to which it searches.
+     */
+    static final class Contestant {
+
+        /**
+         * A side that evaluates positions with EVALUATION, searches
+         * selectively (see AI.setSelective) iff SELECTIVE, and searches to
+         * at most DEPTH.
+         */
+        Contestant(Evaluation evaluation, boolean selective, int depth) {
+            _evaluation = evaluation;
+            _selective = selective;
+            _depth = depth;
+        }
+
+        /**
+         * Return an AI playing COLOR in GAME that searches as I say.
+         */
+        AI newAI(Game game, PieceColor color) {
+            AI ai = new AI(game, color, false);
+            ai.setEvaluation(_evaluation);
+            ai.setSelective(_selective);
+            ai.setDepthLimit(_depth);
+            return ai;
+        }
+
+        /**
+         * The evaluation used.
+         */
+        private final Evaluation _evaluation;
+
+        /**
+         * True iff the search is selective.
+         */
+        private final boolean _selective;
+
+        /**
+         * The greatest depth searched.
+         */
+        private final int _depth;
+    }
+}
@@ -0,0 +1,396 @@
+package qirkat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static qirkat.PieceColor.*;
+
+/**
+ * Endgame tablebases: the exact value of every position with at most
+ * MAX_PIECES pieces, as computed by TablebaseGenerator, read from
+ * memory-mapped files.
+ *
+ * The positions with W white and B black pieces (each at least one) make
+ * up one table, kept in the file named by fileName(W, B).  A table has
+ * one byte for each position, at the offset given by index, which is a
+ * perfect hash of the squares of the white pieces, the squares of the
+ * black pieces among the rest, the horizontal-move restriction on each
+ * piece (none, not left or not right) and the side to move.  The byte is
+ * the value of the position for the side to move: a win in D plies is
+ * D, a loss in D plies is -D-1, and a draw is 0.  Since a piece can
+ * never move backward, nor sideways back to where it came from, every
+ * game ends, so in fact no position is drawn.
+ *
+ * A position has the same value as its image under BitBoard.COLOR_SWAP,
+ * with the board turned around and the colors exchanged, so only the
+ * tables with W >= B are kept, and of those with W == B, only the half
+ * with White to move (the even indices).  Any other position is looked
+ * up as its image.  Reflection from left to right would halve the
+ * tables again, but the index has no cheap way to leave out one of
+ * each pair of mirror images, so it is not used.
+ *
+ * The files are mapped rather than read, so that opening them costs
+ * nothing and only the parts that searches visit are paged in.  Probes
+ * only read, and may be made by any number of threads at once.
+ *
+ * @author Joshua Yurtsever
+ */
+final class Tablebase {
+
+    /**
+     * The most pieces in a position covered by a table.
+     */
+    static final int MAX_PIECES = 4;
+
+    /**
+     * The longest win or loss, in plies, that a table can record.
+     */
+    static final int MAX_DISTANCE = Byte.MAX_VALUE;
+
+    /**
+     * The value of a drawn position.
+     */
+    static final int DRAW = 0;
+
+    /**
+     * The result of probing a position not covered by any table.
+     */
+    static final int UNKNOWN = Integer.MIN_VALUE;
+
+    /**
+     * A Tablebase with no tables.
+     */
+    Tablebase() {
+        _tables = new MappedByteBuffer[MAX_PIECES][MAX_PIECES];
+    }
+
+    /**
+     * Return a Tablebase with the tables in directory DIR.  Tables that
+     * are missing are skipped; it is an error for all to be missing, or
+     * for a file to be of the wrong size.
+     */
+    static Tablebase open(File dir) throws IOException {
+        Tablebase result = new Tablebase();
+        for (int n = 2; n <= MAX_PIECES; n += 1) {
+            for (int w = (n + 1) / 2; w < n; w += 1) {
+                File file = new File(dir, fileName(w, n - w));
+                if (!file.isFile()) {
+                    continue;
+                }
+                try (RandomAccessFile in = new RandomAccessFile(file, "r");
+                     FileChannel channel = in.getChannel()) {
+                    if (channel.size() != fileSize(w, n - w)) {
+                        throw new IOException(file + " is the wrong size");
+                    }
+                    result._tables[w][n - w] =
+                        channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                    channel.size());
+                }
+                result._maxPieces = n;
+            }
+        }
+        if (result._maxPieces == 0) {
+            throw new IOException("no tablebases in " + dir);
+        }
+        return result;
+    }
+
+    /**
+     * Return the most pieces in a position covered by one of my tables,
+     * or 0 if I have none.
+     */
+    int maxPieces() {
+        return _maxPieces;
+    }
+
+    /**
+     * Return the value of BOARD for the side to move (as described in
+     * the class comment), or UNKNOWN if I have no table for it.  A side
+     * to move with no pieces has lost.
+     */
+    int probe(BitBoard board) {
+        int white = board.pieces(WHITE), black = board.pieces(BLACK);
+        int w = Integer.bitCount(white), b = Integer.bitCount(black);
+        PieceColor side = board.whoseMove();
+        if ((side == WHITE ? w : b) == 0) {
+            return loss(0);
+        } else if (w == 0 || b == 0 || w + b > _maxPieces) {
+            return UNKNOWN;
+        }
+        long restrictions = board.restrictions();
+        int noLeft = (int) restrictions & BitBoard.ALL,
+            noRight = (int) (restrictions >>> BitBoard.SQUARES);
+        if (w < b || (w == b && side == BLACK)) {
+            int swap = BitBoard.COLOR_SWAP;
+            int t = BitBoard.transform(white, swap);
+            white = BitBoard.transform(black, swap);
+            black = t;
+            t = BitBoard.transform(noLeft, swap);
+            noLeft = BitBoard.transform(noRight, swap);
+            noRight = t;
+            side = side.opposite();
+            w = b;
+            b = Integer.bitCount(black);
+        }
+        MappedByteBuffer table = _tables[w][b];
+        if (table == null) {
+            return UNKNOWN;
+        }
+        long index = index(white, black, noLeft, noRight, side);
+        return table.get((int) (w == b ? index / 2 : index));
+    }
+
+    /**
+     * Return the encoded move by which the side to move in POSITION
+     * wins soonest, or if it cannot win, draws, or failing that loses
+     * latest.  Returns 0 if POSITION has no move, or if the value of
+     * POSITION or of one of the positions after its moves is UNKNOWN.
+     */
+    long bestMove(BitBoard position) {
+        long[] moves = new long[BitBoard.MAX_MOVES];
+        int n = position.moves(moves);
+        if (n == 0 || probe(position) == UNKNOWN) {
+            return 0;
+        }
+        BitBoard board = new BitBoard(position);
+        long restrictions = board.restrictions();
+        long best = 0;
+        int bestScore = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i += 1) {
+            board.play(moves[i]);
+            int value = probe(board);
+            board.retract(moves[i], restrictions);
+            if (value == UNKNOWN) {
+                return 0;
+            }
+            int score = -score(value, MAX_DISTANCE + 1);
+            if (score > bestScore) {
+                best = moves[i];
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Return VALUE, from a table, as a score for the side to move on a
+     * scale on which a win in no plies is worth WIN and a loss -WIN:
+     * each ply to the end of the game takes one from the magnitude of a
+     * win or loss, and a draw is 0.  So higher scores are better, as
+     * they are for the side to move, and the negation of the score of a
+     * position is its score for the other side.
+     */
+    static int score(int value, int win) {
+        if (value > DRAW) {
+            return win - value;
+        } else if (value < DRAW) {
+            return -win - value - 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Return the value of a win in DISTANCE plies.
+     */
+    static int win(int distance) {
+        return distance;
+    }
+
+    /**
+     * Return the value of a loss in DISTANCE plies.
+     */
+    static int loss(int distance) {
+        return -distance - 1;
+    }
+
+    /**
+     * Return the number of plies to the end of the game in a position
+     * whose value is VALUE, which is not a draw.
+     */
+    static int distance(int value) {
+        return value > 0 ? value : -value - 1;
+    }
+
+    /**
+     * Return the name of the file holding the table of positions with
+     * WHITE white and BLACK black pieces.
+     */
+    static String fileName(int white, int black) {
+        return String.format("qirkat-%dw%db.tb", white, black);
+    }
+
+    /**
+     * Return the number of positions in the table for WHITE white and
+     * BLACK black pieces.
+     */
+    static long size(int white, int black) {
+        return CHOOSE[BitBoard.SQUARES][white]
+            * CHOOSE[BitBoard.SQUARES - white][black]
+            * POWERS_OF_3[white + black] * 2;
+    }
+
+    /**
+     * Return the number of bytes in the file holding the table for WHITE
+     * white and BLACK black pieces, where WHITE >= BLACK.
+     */
+    static long fileSize(int white, int black) {
+        return white > black ? size(white, black) : size(white, black) / 2;
+    }
+
+    /**
+     * Return the index of BOARD, which has at least one and at most
+     * MAX_PIECES pieces in all, in the table for its numbers of pieces.
+     */
+    static long index(BitBoard board) {
+        long restrictions = board.restrictions();
+        return index(board.pieces(WHITE), board.pieces(BLACK),
+                     (int) restrictions & BitBoard.ALL,
+                     (int) (restrictions >>> BitBoard.SQUARES),
+                     board.whoseMove());
+    }
+
+    /**
+     * Return the index of the position with white pieces on the squares
+     * in WHITE and black pieces on those in BLACK, of which those in
+     * NOLEFT may not move left and those in NORIGHT not right, and SIDE
+     * to move, as for index(BitBoard).
+     */
+    private static long index(int white, int black, int noLeft,
+                              int noRight, PieceColor side) {
+        int w = Integer.bitCount(white), b = Integer.bitCount(black);
+        long result = rank(white, BitBoard.ALL)
+            * CHOOSE[BitBoard.SQUARES - w][b]
+            + rank(black, BitBoard.ALL & ~white);
+        result = result * POWERS_OF_3[w + b]
+            + trits(white, noLeft, noRight) * POWERS_OF_3[b]
+            + trits(black, noLeft, noRight);
+        return 2 * result + (side == BLACK ? 1 : 0);
+    }
+
+    /**
+     * Set BOARD to the position with index INDEX in the table for WHITE
+     * white and BLACK black pieces.  The inverse of index.
+     */
+    static void setPosition(BitBoard board, int white, int black,
+                            long index) {
+        PieceColor side = index % 2 == 0 ? WHITE : BLACK;
+        index /= 2;
+        long trits = index % POWERS_OF_3[white + black];
+        index /= POWERS_OF_3[white + black];
+        long blackSets = CHOOSE[BitBoard.SQUARES - white][black];
+        int whiteSet = unrank(index / blackSets, white, BitBoard.ALL),
+            blackSet = unrank(index % blackSets, black,
+                              BitBoard.ALL & ~whiteSet);
+        int noLeft, noRight;
+        noLeft = noRight = 0;
+        for (int set : new int[] { blackSet, whiteSet }) {
+            while (set != 0) {
+                int bit = Integer.highestOneBit(set);
+                set ^= bit;
+                int trit = (int) (trits % 3);
+                trits /= 3;
+                if (trit == 1) {
+                    noLeft |= bit;
+                } else if (trit == 2) {
+                    noRight |= bit;
+                }
+            }
+        }
+        board.setPosition(whiteSet, blackSet,
+                          noLeft | ((long) noRight << BitBoard.SQUARES),
+                          side);
+    }
+
+    /**
+     * Return the rank of the squares in SET among all sets of as many
+     * squares from UNIVERSE, which contains SET, in colexicographic
+     * order.
+     */
+    private static long rank(int set, int universe) {
+        long result;
+        result = 0;
+        int i = 1;
+        for (int rest = set; rest != 0; rest &= rest - 1, i += 1) {
+            int below = Integer.lowestOneBit(rest) - 1;
+            result += CHOOSE[Integer.bitCount(universe & below)][i];
+        }
+        return result;
+    }
+
+    /**
+     * Return the set of SIZE squares from UNIVERSE whose rank (see rank)
+     * is RANK.
+     */
+    private static int unrank(long rank, int size, int universe) {
+        int set;
+        set = 0;
+        for (int i = size; i > 0; i -= 1) {
+            int p = i - 1;
+            while (CHOOSE[p + 1][i] <= rank) {
+                p += 1;
+            }
+            rank -= CHOOSE[p][i];
+            int rest = universe;
+            for (int j = 0; j < p; j += 1) {
+                rest &= rest - 1;
+            }
+            set |= Integer.lowestOneBit(rest);
+        }
+        return set;
+    }
+
+    /**
+     * Return the restrictions (0 for none, 1 for not left, 2 for not
+     * right) on the pieces in SET, in increasing order of square, as
+     * the digits of a number in base 3, most significant first, given
+     * the masks of squares NOLEFT and NORIGHT that are restricted.
+     */
+    private static long trits(int set, int noLeft, int noRight) {
+        long result;
+        result = 0;
+        for (int rest = set; rest != 0; rest &= rest - 1) {
+            int bit = Integer.lowestOneBit(rest);
+            result = 3 * result
+                + ((noLeft & bit) != 0 ? 1 : (noRight & bit) != 0 ? 2 : 0);
+        }
+        return result;
+    }
+
+    /**
+     * CHOOSE[N][K] is the number of ways to choose K things from N.
+     */
+    private static final long[][] CHOOSE =
+        new long[BitBoard.SQUARES + 1][MAX_PIECES + 1];
+
+    /**
+     * POWERS_OF_3[K] is 3 to the power K.
+     */
+    private static final long[] POWERS_OF_3 = new long[MAX_PIECES + 1];
+
+    static {
+        for (int n = 0; n <= BitBoard.SQUARES; n += 1) {
+            CHOOSE[n][0] = 1;
+            for (int k = 1; k <= MAX_PIECES && k <= n; k += 1) {
+                CHOOSE[n][k] = CHOOSE[n - 1][k - 1] + CHOOSE[n - 1][k];
+            }
+        }
+        POWERS_OF_3[0] = 1;
+        for (int k = 1; k <= MAX_PIECES; k += 1) {
+            POWERS_OF_3[k] = 3 * POWERS_OF_3[k - 1];
+        }
+    }
+
+    /**
+     * _tables[W][B] is the table for W white and B black pieces, or null
+     * if I do not have it.
+     */
+    private final MappedByteBuffer[][] _tables;
+
+    /**
+     * The most pieces in a position covered by one of my tables.
+     */
+    private int _maxPieces;
+}
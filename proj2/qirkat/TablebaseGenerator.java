@@ -0,0 +1,405 @@
+package qirkat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static qirkat.PieceColor.*;
+
+/**
+ * Computes the tables read by Tablebase, by retrograde analysis.
+ *
+ * The tables are computed in order of the number of pieces, so that the
+ * positions after a capture, which has fewer pieces, are always in a
+ * table already computed.  For each table, a first pass over all its
+ * positions settles those whose side to move has no move (lost) or must
+ * capture (valued from the smaller tables), and counts the moves of the
+ * rest, which are all steps to positions in the same table.  Then, for
+ * D = 0, 1, 2, ..., each position settled as a win or loss in D plies is
+ * unmade into the positions that lead to it by a step: the unsettled ones
+ * among them are wins in D + 1 if it is a loss, and if it is a win, they
+ * have one fewer move left to settle, becoming losses in D + 1 when none
+ * remain.  Positions still unsettled when no more are found would be
+ * draws.
+ *
+ * The predecessors of a position are the positions from which the side
+ * that just moved could have stepped into it: a piece of that side is
+ * moved back to a square from which its color can step (so the
+ * forward-only and back-rank rules are kept), with whatever restriction
+ * it might have had that allowed the step, provided that the restriction
+ * it has now is the one the step would have left and that the side had
+ * no capture, which would have been compulsory.
+ *
+ * Each pass is divided among threads by ranges of positions.  Settling a
+ * position and counting off its moves are atomic, and the positions a
+ * pass settles are in the next distance, which the pass does not read,
+ * so the threads need no other coordination.
+ *
+ * Tables are computed whole, but written only in the part that Tablebase
+ * keeps (see Tablebase.fileSize): the others are only needed here, for
+ * the positions after captures, and only the smaller ones of them.
+ *
+ * Usage: java qirkat.TablebaseGenerator DIR [PIECES [THREADS]]
+ *
+ * writes the tables for positions with up to PIECES pieces (default and
+ * at most Tablebase.MAX_PIECES) to directory DIR.
+ *
+ * @author Joshua Yurtsever
+ */
+final class TablebaseGenerator {
+
+    /**
+     * Number of positions in each share of a pass given to a thread.
+     */
+    private static final int CHUNK = 1 << 16;
+
+    /**
+     * A generator that uses THREADS threads.
+     */
+    TablebaseGenerator(int threads) {
+        _threads = threads;
+        _tables = new byte[Tablebase.MAX_PIECES][Tablebase.MAX_PIECES][];
+    }
+
+    /**
+     * Generate tables as directed by ARGS (see the class comment).
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 3) {
+            usage();
+        }
+        int pieces = SelfPlay.intArgument(args, 1, Tablebase.MAX_PIECES),
+            threads = SelfPlay.intArgument(args, 2, 1);
+        if (pieces < 2 || pieces > Tablebase.MAX_PIECES || threads <= 0) {
+            usage();
+        }
+        File dir = new File(args[0]);
+        dir.mkdirs();
+        TablebaseGenerator generator = new TablebaseGenerator(threads);
+        try {
+            for (int n = 2; n <= pieces; n += 1) {
+                for (int w = (n + 1) / 2; w < n; w += 1) {
+                    long start = System.nanoTime();
+                    File file = generator.write(dir, w, n - w);
+                    byte[] table = generator.generate(w, n - w);
+                    System.out.printf("%s: %d positions, longest %d plies,"
+                                      + " %.1f s%n", file.getName(),
+                                      table.length, longest(table),
+                                      (System.nanoTime() - start) / 1e9);
+                }
+            }
+        } catch (IOException excp) {
+            System.err.printf("Cannot write tablebases: %s%n",
+                              excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Write the part of the table for WHITE white and BLACK black pieces,
+     * where WHITE >= BLACK, that Tablebase keeps to its file in
+     * directory DIR, generating the table first if need be.  Return the
+     * file.
+     */
+    File write(File dir, int white, int black) throws IOException {
+        byte[] table = generate(white, black);
+        if (white == black) {
+            byte[] half = new byte[table.length / 2];
+            for (int i = 0; i < half.length; i += 1) {
+                half[i] = table[2 * i];
+            }
+            table = half;
+        }
+        File file = new File(dir, Tablebase.fileName(white, black));
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(table);
+        }
+        return file;
+    }
+
+    /**
+     * Return the table for WHITE white and BLACK black pieces, which
+     * must have at least one each, computing first any smaller tables
+     * it needs that I have not computed.
+     */
+    byte[] generate(int white, int black) {
+        if (_tables[white][black] != null) {
+            return _tables[white][black];
+        }
+        for (int w = 1; w <= white; w += 1) {
+            for (int b = 1; b <= black; b += 1) {
+                if (w + b < white + black) {
+                    generate(w, b);
+                }
+            }
+        }
+        long size = Tablebase.size(white, black);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("table too large");
+        }
+        byte[] values = new byte[(int) size];
+        AtomicIntegerArray moves = new AtomicIntegerArray(values.length);
+        int[] longest = new int[1];
+        pass(values.length, (board, from, to) -> {
+            int most = settle(board, white, black, values, moves, from, to);
+            synchronized (longest) {
+                longest[0] = Math.max(longest[0], most);
+            }
+        });
+        for (int d = 0; d <= longest[0]; d += 1) {
+            int distance = d;
+            pass(values.length, (board, from, to) -> {
+                boolean found =
+                    retract(board, white, black, values, moves, distance,
+                            from, to);
+                if (found) {
+                    synchronized (longest) {
+                        longest[0] = Math.max(longest[0], distance + 1);
+                    }
+                }
+            });
+        }
+        _tables[white][black] = values;
+        return values;
+    }
+
+    /**
+     * Settle each position with index FROM .. TO-1 in the table for
+     * WHITE white and BLACK black pieces that is lost for want of a move
+     * or must capture, putting its value in VALUES, and put the number of
+     * moves of each of the others in MOVES.  BOARD is for working on.
+     * Return the greatest distance settled, or 0.
+     */
+    private int settle(BitBoard board, int white, int black, byte[] values,
+                       AtomicIntegerArray moves, int from, int to) {
+        long[] buffer = new long[BitBoard.MAX_MOVES];
+        int most = 0;
+        for (int i = from; i < to; i += 1) {
+            Tablebase.setPosition(board, white, black, i);
+            int n = board.moves(buffer);
+            if (n == 0) {
+                values[i] = (byte) Tablebase.loss(0);
+            } else if (!board.jumpPossible()) {
+                moves.set(i, n);
+                continue;
+            } else {
+                values[i] = best(board, buffer, n);
+            }
+            if (values[i] != Tablebase.DRAW) {
+                most = Math.max(most, Tablebase.distance(values[i]));
+            }
+        }
+        return most;
+    }
+
+    /**
+     * Return the value of BOARD, given its N moves, the first N of
+     * MOVES, all of them captures, from the values of the positions
+     * after them.
+     */
+    private byte best(BitBoard board, long[] moves, int n) {
+        long restrictions = board.restrictions();
+        int win = Tablebase.MAX_DISTANCE + 1;
+        int best = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i += 1) {
+            board.play(moves[i]);
+            int value = value(board);
+            board.retract(moves[i], restrictions);
+            best = Math.max(best, -Tablebase.score(value, win));
+        }
+        if (best > 0) {
+            return checked(Tablebase.win(win - best + 1));
+        } else if (best < 0) {
+            return checked(Tablebase.loss(win + best + 1));
+        }
+        return Tablebase.DRAW;
+    }
+
+    /**
+     * Return the value of BOARD, which has fewer pieces than the table
+     * being computed, from the tables already computed.
+     */
+    private int value(BitBoard board) {
+        int white = Integer.bitCount(board.pieces(WHITE)),
+            black = Integer.bitCount(board.pieces(BLACK));
+        if (board.pieces(board.whoseMove()) == 0) {
+            return Tablebase.loss(0);
+        }
+        return _tables[white][black][(int) Tablebase.index(board)];
+    }
+
+    /**
+     * Return VALUE as a byte, having checked that its distance is not
+     * too great to record.
+     */
+    private static byte checked(int value) {
+        if (Tablebase.distance(value) > Tablebase.MAX_DISTANCE) {
+            throw new IllegalStateException("game too long to record");
+        }
+        return (byte) value;
+    }
+
+    /**
+     * Unmake each position with index FROM .. TO-1 in the table for
+     * WHITE white and BLACK black pieces that is settled (in VALUES) as
+     * a win or loss in DISTANCE plies, settling its predecessors as
+     * described in the class comment.  MOVES holds the number of moves
+     * of each position still to be settled, and is 0 for settled ones.
+     * BOARD is for working on.  Return true iff any position is
+     * settled.
+     */
+    private boolean retract(BitBoard board, int white, int black,
+                            byte[] values, AtomicIntegerArray moves,
+                            int distance, int from, int to) {
+        boolean found = false;
+        for (int i = from; i < to; i += 1) {
+            byte value = values[i];
+            if (value == Tablebase.DRAW || moves.get(i) != 0
+                || Tablebase.distance(value) != distance) {
+                continue;
+            }
+            Tablebase.setPosition(board, white, black, i);
+            found |= unmake(board, values, moves, value);
+        }
+        return found;
+    }
+
+    /**
+     * Settle the predecessors of BOARD, whose value is VALUE, a win or
+     * loss, as described in the class comment, in VALUES and MOVES (as
+     * for retract).  BOARD is left changed.  Return true iff any
+     * position is settled.
+     */
+    private boolean unmake(BitBoard board, byte[] values,
+                           AtomicIntegerArray moves, int value) {
+        PieceColor mover = board.whoseMove().opposite();
+        int own = board.pieces(mover),
+            other = board.pieces(mover.opposite());
+        long restrictions = board.restrictions();
+        int noLeft = (int) restrictions & BitBoard.ALL,
+            noRight = (int) (restrictions >>> BitBoard.SQUARES);
+        boolean found = false;
+        for (int rest = own; rest != 0; rest &= rest - 1) {
+            int k = Integer.numberOfTrailingZeros(rest), bit = 1 << k;
+            int origins = BitBoard.stepOrigins(mover, k) & ~(own | other);
+            for (; origins != 0; origins &= origins - 1) {
+                int f = Integer.numberOfTrailingZeros(origins), fbit = 1 << f;
+                int leftBy = f == k - 1 ? bit : 0,
+                    rightBy = f == k + 1 ? bit : 0;
+                if ((noLeft & bit) != leftBy || (noRight & bit) != rightBy) {
+                    continue;
+                }
+                int moved = own ^ bit ^ fbit;
+                for (int r = 0; r < 3; r += 1) {
+                    if (r == 1 && f == k + 1 || r == 2 && f == k - 1) {
+                        continue;
+                    }
+                    int left = (noLeft & ~bit) | (r == 1 ? fbit : 0),
+                        right = (noRight & ~bit) | (r == 2 ? fbit : 0);
+                    board.setPosition(mover == WHITE ? moved : other,
+                                      mover == WHITE ? other : moved,
+                                      left | ((long) right << BitBoard.SQUARES),
+                                      mover);
+                    if (!board.jumpPossible()) {
+                        int p = (int) Tablebase.index(board);
+                        found |= settlePredecessor(values, moves, p, value);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Settle, if it is not settled already, the position with index P,
+     * one of whose moves leads to a position with value VALUE, a win or
+     * loss, in VALUES and MOVES (as for retract).  Return true iff it is
+     * settled now.
+     */
+    private static boolean settlePredecessor(byte[] values,
+                                             AtomicIntegerArray moves,
+                                             int p, int value) {
+        int distance = Tablebase.distance(value);
+        if (value < 0) {
+            if (moves.getAndSet(p, 0) > 0) {
+                values[p] = checked(Tablebase.win(distance + 1));
+                return true;
+            }
+            return false;
+        }
+        while (true) {
+            int left = moves.get(p);
+            if (left == 0) {
+                return false;
+            } else if (moves.compareAndSet(p, left, left - 1)) {
+                if (left == 1) {
+                    values[p] = checked(Tablebase.loss(distance + 1));
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Work done by a pass on one share of the positions.
+     */
+    private interface Share {
+        /**
+         * Process the positions with indices FROM .. TO-1, using BOARD
+         * to work on.
+         */
+        void process(BitBoard board, int from, int to);
+    }
+
+    /**
+     * Divide the positions 0 .. SIZE-1 into chunks and have my threads
+     * process them with TASK, waiting for all to finish.
+     */
+    private void pass(int size, Share task) {
+        int chunks = (size + CHUNK - 1) / CHUNK;
+        SelfPlay.parallel(chunks, _threads, (c) -> {
+            BitBoard board = new BitBoard();
+            task.process(board, c * CHUNK,
+                         (int) Math.min(size, (long) (c + 1) * CHUNK));
+        });
+    }
+
+    /**
+     * Return the greatest distance of a win or loss in TABLE.
+     */
+    private static int longest(byte[] table) {
+        int result;
+        result = 0;
+        for (byte value : table) {
+            if (value != Tablebase.DRAW) {
+                result = Math.max(result, Tablebase.distance(value));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Print a usage message and exit.
+     */
+    private static void usage() {
+        System.err.printf("Usage: java qirkat.TablebaseGenerator DIR "
+                          + "[PIECES [THREADS]]%n"
+                          + "PIECES is from 2 to %d.%n",
+                          Tablebase.MAX_PIECES);
+        System.exit(1);
+    }
+
+    /**
+     * Number of threads to use.
+     */
+    private final int _threads;
+
+    /**
+     * _tables[W][B] is the table for W white and B black pieces, once
+     * computed.
+     */
+    private final byte[][][] _tables;
+}
@@ -0,0 +1,102 @@
+package qirkat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static qirkat.PieceColor.*;
+
+/**
+ * Tests of the Tablebase and TablebaseGenerator classes.
+ *
+ * @author Joshua Yurtsever
+ */
+public class TablebaseTest {
+
+    /** Return the value of B, as recorded in a table, found by searching
+     *  every line of play to the end, remembering values in MEMO. */
+    private static int solve(BitBoard b, HashMap<Long, Integer> memo) {
+        Integer known = memo.get(b.key());
+        if (known != null) {
+            return known;
+        }
+        long[] moves = new long[BitBoard.MAX_MOVES];
+        int n = b.moves(moves);
+        long restrictions = b.restrictions();
+        int win = 1000, best = -win - 1;
+        for (int i = 0; i < n; i += 1) {
+            b.play(moves[i]);
+            best = Math.max(best, -Tablebase.score(solve(b, memo), win));
+            b.retract(moves[i], restrictions);
+        }
+        int value = best > 0 ? Tablebase.win(win - best + 1)
+            : Tablebase.loss(win + best + 1);
+        memo.put(b.key(), value);
+        return value;
+    }
+
+    /** Return a directory holding the tables for up to 3 pieces. */
+    private static File tables() throws IOException {
+        File dir = Files.createTempDirectory("qirkat").toFile();
+        dir.deleteOnExit();
+        TablebaseGenerator generator = new TablebaseGenerator(2);
+        for (int n = 2; n <= 3; n += 1) {
+            for (int w = (n + 1) / 2; w < n; w += 1) {
+                generator.write(dir, w, n - w).deleteOnExit();
+            }
+        }
+        return dir;
+    }
+
+    @Test
+    public void testIndex() {
+        Random random = new Random(23);
+        BitBoard b = new BitBoard(), c = new BitBoard();
+        for (int t = 0; t < 1000; t += 1) {
+            int w = 1 + random.nextInt(Tablebase.MAX_PIECES - 1),
+                bl = 1 + random.nextInt(Tablebase.MAX_PIECES - w);
+            long index = (long) (random.nextDouble() * Tablebase.size(w, bl));
+            Tablebase.setPosition(b, w, bl, index);
+            assertEquals(w, Integer.bitCount(b.pieces(WHITE)));
+            assertEquals(bl, Integer.bitCount(b.pieces(BLACK)));
+            assertEquals(index, Tablebase.index(b));
+            c.setPosition(b.pieces(WHITE), b.pieces(BLACK),
+                          b.restrictions(), b.whoseMove());
+            assertEquals(index, Tablebase.index(c));
+        }
+    }
+
+    @Test
+    public void testValues() throws IOException {
+        Tablebase tablebase = Tablebase.open(tables());
+        assertEquals(3, tablebase.maxPieces());
+        HashMap<Long, Integer> memo = new HashMap<>();
+        Random random = new Random(5);
+        BitBoard b = new BitBoard();
+        for (int t = 0; t < 2000; t += 1) {
+            int w = 1 + random.nextInt(2), bl = 1 + random.nextInt(3 - w);
+            Tablebase.setPosition(b, w, bl,
+                                  random.nextInt((int) Tablebase.size(w, bl)));
+            assertEquals(solve(b, memo), tablebase.probe(b));
+        }
+        b.setPosition(0x1f, 0x3 << 20, 0, WHITE);
+        assertEquals(Tablebase.UNKNOWN, tablebase.probe(b));
+    }
+
+    @Test
+    public void testAIFollowsTablebase() throws IOException {
+        Board board = new Board();
+        Game game = new Game(board, null, new TextReporter());
+        game.doTablebases(new String[] { tables().getPath() });
+        board.setPieces("-w--- ----- ----- --b-- b----", WHITE);
+        AI ai = new AI(game, WHITE, false);
+        long best = game.tablebase().bestMove(board.position());
+        assertNotEquals(0, best);
+        assertEquals(board.toMove(best), ai.findMove());
+    }
+}
@@ -0,0 +1,237 @@
+package qirkat;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size table of search results, indexed by Zobrist key (see
+ * BitBoard.key).  Each entry is two longs: the position's key, and a data
+ * word packing the best move found (as encoded by BitBoard.encode), the
+ * depth searched, the kind of bound the score is, and the score itself.
+ * The AI stores each position under its canonical key (see
+ * BitBoard.canonicalKey), with the move as it is in the image that has
+ * that key, so that a result serves every symmetric position.
+ * The entries are kept in buckets of two.  The first holds the deepest
+ * result seen for any position in the bucket during the current search;
+ * the second is replaced by anything the first will not take.
+ *
+ * Since the low-order bits of a key choose its bucket, they need not be
+ * stored.  The low GENERATION_BITS of the stored key instead record which
+ * search wrote the entry, so that stale deep entries from earlier moves
+ * give way to new ones.
+ *
+ * Several threads may use a table at once without locking.  A thread
+ * reading an entry while another writes it could see the key of one
+ * entry and the data of the other, so the key word is stored XORed with
+ * the data word; a mixed pair then fails the key check, and reads as a
+ * miss (apart from the generation bits, which are only a hint).
+ *
+ * @author Joshua Yurtsever
+ */
+final class TranspositionTable {
+
+    /**
+     * Kinds of bound: the score is exact, or a lower or upper bound on
+     * the position's value.  None is 0, so no data word is 0.
+     */
+    static final int EXACT = 1, LOWER = 2, UPPER = 3;
+
+    /**
+     * The largest magnitude of score that can be stored in the 21 bits
+     * that hold it.  Scores of Integer.MAX_VALUE (a won position) are
+     * stored as this; other scores are clipped to less.
+     */
+    static final int MAX_SCORE = (1 << 20) - 1;
+
+    /**
+     * The smallest and largest sizes of table, in megabytes.
+     */
+    static final int MIN_MEGABYTES = 1, MAX_MEGABYTES = 1024;
+
+    /**
+     * A table taking about MEGABYTES megabytes, where MIN_MEGABYTES <=
+     * MEGABYTES <= MAX_MEGABYTES.
+     */
+    TranspositionTable(int megabytes) {
+        assert MIN_MEGABYTES <= megabytes && megabytes <= MAX_MEGABYTES;
+        _megabytes = megabytes;
+        int buckets =
+            Integer.highestOneBit((megabytes << 20) / BUCKET_BYTES);
+        _mask = buckets - 1;
+        _keys = new long[BUCKET_SIZE * buckets];
+        _data = new long[BUCKET_SIZE * buckets];
+    }
+
+    /**
+     * Return my size in megabytes, as given to my constructor.
+     */
+    int megabytes() {
+        return _megabytes;
+    }
+
+    /**
+     * Remove all entries.
+     */
+    void clear() {
+        Arrays.fill(_keys, 0);
+        Arrays.fill(_data, 0);
+    }
+
+    /**
+     * Note the start of a new search, whose entries are to be preferred
+     * to those of earlier searches.
+     */
+    void newSearch() {
+        _generation = (_generation + 1) & GENERATION_MASK;
+    }
+
+    /**
+     * Return the data word stored for the position whose key is KEY, or
+     * 0 if there is none.
+     */
+    long probe(long key) {
+        int b = bucket(key);
+        for (int i = b; i < b + BUCKET_SIZE; i += 1) {
+            long data = _data[i];
+            if (data != 0 && matches(_keys[i] ^ data, key)) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Record that a search to DEPTH of the position whose key is KEY
+     * found best move MOVE with score SCORE, which is a bound of kind
+     * BOUND (EXACT, LOWER, or UPPER).
+     */
+    void store(long key, long move, int depth, int bound, int score) {
+        int b = bucket(key);
+        int slot = b + 1;
+        long first = _keys[b], firstData = _data[b];
+        if (firstData == 0 || matches(first ^ firstData, key)
+            || (first & GENERATION_MASK) != _generation
+            || depth >= depth(firstData)) {
+            slot = b;
+        }
+        long data = move | ((long) depth << DEPTH_SHIFT)
+            | ((long) bound << BOUND_SHIFT)
+            | ((long) packScore(score) << SCORE_SHIFT);
+        _keys[slot] = ((key ^ data) & ~GENERATION_MASK) | _generation;
+        _data[slot] = data;
+    }
+
+    /**
+     * Return the best move recorded in the data word DATA.
+     */
+    static long move(long data) {
+        return data & MOVE_MASK;
+    }
+
+    /**
+     * Return the depth recorded in the data word DATA.
+     */
+    static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & DEPTH_MASK;
+    }
+
+    /**
+     * Return the kind of bound recorded in the data word DATA.
+     */
+    static int bound(long data) {
+        return (int) (data >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    /**
+     * Return the score recorded in the data word DATA.
+     */
+    static int score(long data) {
+        int score = (int) (data >> SCORE_SHIFT);
+        if (score == MAX_SCORE) {
+            return Integer.MAX_VALUE;
+        } else if (score == -MAX_SCORE) {
+            return -Integer.MAX_VALUE;
+        }
+        return score;
+    }
+
+    /**
+     * Return SCORE in the form in which it is stored.
+     */
+    private static int packScore(int score) {
+        if (score == Integer.MAX_VALUE) {
+            return MAX_SCORE;
+        } else if (score == -Integer.MAX_VALUE) {
+            return -MAX_SCORE;
+        }
+        return Math.max(-MAX_SCORE + 1, Math.min(MAX_SCORE - 1, score));
+    }
+
+    /**
+     * Return the index of the first entry of the bucket for KEY.
+     */
+    private int bucket(long key) {
+        return BUCKET_SIZE * (int) (key & _mask);
+    }
+
+    /**
+     * Return true iff the stored key STORED, XORed with its data word, is
+     * that of the position whose key is KEY.
+     */
+    private static boolean matches(long stored, long key) {
+        return ((stored ^ key) & ~GENERATION_MASK) == 0;
+    }
+
+    /**
+     * Number of entries in a bucket, and the size of a bucket in bytes.
+     */
+    private static final int BUCKET_SIZE = 2, BUCKET_BYTES = 32;
+
+    /**
+     * Number of low-order bits of stored keys that hold a generation.
+     * At least this many bits of every key pick out its bucket.
+     */
+    private static final int GENERATION_BITS = 8;
+
+    /**
+     * Mask for the generation in a stored key.
+     */
+    private static final long GENERATION_MASK = (1 << GENERATION_BITS) - 1;
+
+    /**
+     * Layout of data words: the move in the low bits, then the depth,
+     * the bound, and the score in the high bits.
+     */
+    private static final int
+        MOVE_BITS = 35, DEPTH_BITS = 6, BOUND_BITS = 2,
+        DEPTH_SHIFT = MOVE_BITS,
+        BOUND_SHIFT = DEPTH_SHIFT + DEPTH_BITS,
+        SCORE_SHIFT = BOUND_SHIFT + BOUND_BITS,
+        DEPTH_MASK = (1 << DEPTH_BITS) - 1,
+        BOUND_MASK = (1 << BOUND_BITS) - 1;
+
+    /**
+     * Mask for the move in a data word.
+     */
+    private static final long MOVE_MASK = (1L << MOVE_BITS) - 1;
+
+    /**
+     * My size in megabytes.
+     */
+    private final int _megabytes;
+
+    /**
+     * Mask giving the bucket number from a key.
+     */
+    private final int _mask;
+
+    /**
+     * Stored keys and data words, BUCKET_SIZE entries to a bucket.
+     */
+    private final long[] _keys, _data;
+
+    /**
+     * The generation of the current search.  Only the thread that starts
+     * searches changes it.
+     */
+    private long _generation;
+}
@@ -0,0 +1,103 @@
+package qirkat;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static qirkat.TranspositionTable.*;
+
+/**
+ * Tests of the TranspositionTable class.
+ *
+ * @author Joshua Yurtsever
+ */
+public class TranspositionTableTest {
+
+    /** Keys that all fall in the same bucket. */
+    private static final long K1 = 0x123456789abcdef0L,
+        K2 = K1 ^ (1L << 60), K3 = K1 ^ (1L << 50);
+
+    @Test
+    public void testStoreAndProbe() {
+        TranspositionTable table = new TranspositionTable(1);
+        assertEquals(0, table.probe(K1));
+        long mv = BitBoard.encode(Move.index('a', '1'), Move.index('c', '3'),
+                                  1 << Move.index('b', '2'));
+        table.store(K1, mv, 7, LOWER, -12);
+        long entry = table.probe(K1);
+        assertEquals(mv, move(entry));
+        assertEquals(7, depth(entry));
+        assertEquals(LOWER, bound(entry));
+        assertEquals(-12, score(entry));
+        assertEquals(0, table.probe(K2));
+
+        table.store(K1, mv, 3, EXACT, Integer.MAX_VALUE);
+        assertEquals(Integer.MAX_VALUE, score(table.probe(K1)));
+        table.store(K1, mv, 3, EXACT, -Integer.MAX_VALUE);
+        assertEquals(-Integer.MAX_VALUE, score(table.probe(K1)));
+        table.store(K1, mv, 3, UPPER, Integer.MAX_VALUE - 1);
+        assertEquals(MAX_SCORE - 1, score(table.probe(K1)));
+        table.clear();
+        assertEquals(0, table.probe(K1));
+    }
+
+    @Test
+    public void testReplacement() {
+        TranspositionTable table = new TranspositionTable(1);
+        table.store(K1, 1, 8, EXACT, 1);
+        table.store(K2, 2, 4, EXACT, 2);
+        assertEquals("deep entry replaced", 1, move(table.probe(K1)));
+        assertEquals(2, move(table.probe(K2)));
+        table.store(K3, 3, 2, EXACT, 3);
+        assertEquals(1, move(table.probe(K1)));
+        assertEquals(0, table.probe(K2));
+        assertEquals(3, move(table.probe(K3)));
+        table.newSearch();
+        table.store(K2, 2, 1, EXACT, 2);
+        assertEquals("stale entry kept", 0, table.probe(K1));
+        assertEquals(2, move(table.probe(K2)));
+        assertEquals(3, move(table.probe(K3)));
+    }
+
+    /** Return the move stored for key K in testConcurrentUse. */
+    private static long expected(long k) {
+        return k & ((1L << 35) - 1);
+    }
+
+    /** Return the score stored for key K in testConcurrentUse. */
+    private static int expectedScore(long k) {
+        return (int) (k >>> 40) & 0xfff;
+    }
+
+    @Test
+    public void testConcurrentUse() throws InterruptedException {
+        TranspositionTable table = new TranspositionTable(1);
+        Thread[] threads = new Thread[4];
+        boolean[] failed = new boolean[1];
+        for (int t = 0; t < threads.length; t += 1) {
+            long seed = t;
+            threads[t] = new Thread(() -> {
+                java.util.Random r = new java.util.Random(seed);
+                for (int i = 0; i < 200000; i += 1) {
+                    long k = K1 ^ ((long) r.nextInt(16) << 40)
+                        ^ ((long) r.nextInt(16) << 8);
+                    if (r.nextBoolean()) {
+                        table.store(k, expected(k), r.nextInt(20),
+                                    EXACT, expectedScore(k));
+                    } else {
+                        long entry = table.probe(k);
+                        if (entry != 0 && (move(entry) != expected(k)
+                                           || score(entry)
+                                              != expectedScore(k))) {
+                            failed[0] = true;
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertFalse("probe returned another position's entry", failed[0]);
+    }
+}
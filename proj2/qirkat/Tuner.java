@@ -0,0 +1,349 @@
+package qirkat;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fits the weights of the evaluation to positions from games, as
+ * written by SelfPlay.  The evaluation of a position, scaled and passed
+ * through the logistic function, is read as a prediction of the result
+ * for the side to move; the weights are those that minimize the mean
+ * squared error of these predictions over all the positions.  The scale
+ * is fitted first, to the starting weights, so that the error measures
+ * the weights alone.
+ *
+ * The minimization is by gradient descent from the default weights,
+ * with per-weight step sizes adjusted as in Adam.  Each step's error and
+ * gradient are computed in parallel, each of a fixed pool of threads,
+ * started once for the whole fit, summing over its share of the
+ * positions.  The value of a piece is fixed, so the fitted
+ * weights stay in the units of PIECE_VALUE.
+ *
+ * Reports the error before and after fitting, writes the fitted weights
+ * to WEIGHTS (in the form read by Evaluation.read; copy it to qirkat/ as
+ * weights.txt to make it the default), and plays PAIRS pairs of games
+ * between the fitted and starting weights (see SelfPlay.match).
+ *
+ * Usage: java qirkat.Tuner SAMPLE WEIGHTS [THREADS [PAIRS]]
+ *
+ * @author Joshua Yurtsever
+ */
+final class Tuner {
+
+    /**
+     * Number of descent steps.
+     */
+    static final int STEPS = 2000;
+
+    /**
+     * Step size, in weight units, and the decay rates of the running
+     * averages of the gradient and its square.
+     */
+    static final double RATE = 0.5, DECAY1 = 0.9, DECAY2 = 0.999;
+
+    /**
+     * The largest scale considered, and the precision to which it is
+     * fitted.
+     */
+    static final double MAX_SCALE = 100, SCALE_TOLERANCE = 1e-4;
+
+    /**
+     * Number of pairs of games played to compare the weights, unless
+     * given on the command line, and the depth they are searched to.
+     */
+    static final int DEFAULT_PAIRS = 100, MATCH_DEPTH = 4;
+
+    /**
+     * A tuner that uses THREADS threads.
+     */
+    private Tuner(int threads) {
+        _threads = threads;
+        _pool = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Fit weights as directed by ARGS (see the class comment).
+     */
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 4) {
+            usage();
+        }
+        int threads = SelfPlay.intArgument(args, 2, 1),
+            pairs = SelfPlay.intArgument(args, 3, DEFAULT_PAIRS);
+        if (threads <= 0 || pairs < 0) {
+            usage();
+        }
+        Tuner tuner = new Tuner(threads);
+        try {
+            tuner.read(args[0]);
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Cannot read %s: %s%n", args[0],
+                              excp.getMessage());
+            System.exit(1);
+        }
+        Evaluation start = Evaluation.DEFAULT;
+        double[] weights = new double[Evaluation.WEIGHTS];
+        for (int i = 0; i < weights.length; i += 1) {
+            weights[i] = start.weight(i);
+        }
+        int[] rounded = new int[weights.length];
+        double before, after;
+        try {
+            tuner._scale = tuner.fitScale(weights);
+            before = tuner.error(weights, null);
+            tuner.descend(weights);
+            for (int i = 0; i < weights.length; i += 1) {
+                rounded[i] = (int) Math.round(weights[i]);
+                weights[i] = rounded[i];
+            }
+            after = tuner.error(weights, null);
+        } finally {
+            tuner._pool.shutdown();
+        }
+        Evaluation fitted = new Evaluation(rounded);
+
+        System.out.printf("%d positions, scale %.4f%n", tuner._size,
+                          tuner._scale);
+        System.out.printf("%-10s %8s %8s%n", "weight", "before", "after");
+        for (int i = 0; i < weights.length; i += 1) {
+            System.out.printf("%-10s %8d %8d%n", Evaluation.NAMES[i],
+                              start.weight(i), rounded[i]);
+        }
+        System.out.printf("error: %.6f before, %.6f after%n", before,
+                          after);
+        try (PrintWriter out = new PrintWriter(new FileWriter(args[1]))) {
+            fitted.write(out);
+        } catch (IOException excp) {
+            System.err.printf("Cannot write %s: %s%n", args[1],
+                              excp.getMessage());
+            System.exit(1);
+        }
+        if (pairs > 0) {
+            double score =
+                SelfPlay.match(fitted, start, pairs, MATCH_DEPTH, threads);
+            System.out.printf("self-play at depth %d, fitted against "
+                              + "starting weights: %.1f-%.1f%n",
+                              MATCH_DEPTH, score, 2 * pairs - score);
+        }
+    }
+
+    /**
+     * Read the positions in the file named SAMPLE, as written by
+     * SelfPlay, noting for each its features and the result for the side
+     * to move.  Positions that are over are skipped.
+     */
+    private void read(String sample) throws IOException {
+        ArrayList<int[]> features = new ArrayList<>();
+        ArrayList<Double> results = new ArrayList<>();
+        BitBoard board = new BitBoard();
+        try (BufferedReader in = new BufferedReader(new FileReader(sample))) {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                String[] words = line.trim().split("\\s+");
+                if (words.length != 3) {
+                    throw new IllegalArgumentException("bad line: " + line);
+                }
+                board.setPacked(Long.parseLong(words[0], 16),
+                                Long.parseLong(words[1], 16));
+                if (!board.hasMove()) {
+                    continue;
+                }
+                int[] f = new int[Evaluation.WEIGHTS + 1];
+                Evaluation.features(board, f);
+                f[Evaluation.WEIGHTS] = Evaluation.material(board);
+                double result = Double.parseDouble(words[2]);
+                if (board.whoseMove() == PieceColor.BLACK) {
+                    result = 1 - result;
+                }
+                features.add(f);
+                results.add(result);
+            }
+        }
+        _size = features.size();
+        if (_size == 0) {
+            throw new IllegalArgumentException("no positions");
+        }
+        _features = features.toArray(new int[_size][]);
+        _results = new double[_size];
+        for (int i = 0; i < _size; i += 1) {
+            _results[i] = results.get(i);
+        }
+    }
+
+    /**
+     * Return the scale between 0 and MAX_SCALE that minimizes the error
+     * of WEIGHTS, found by golden-section search.
+     */
+    private double fitScale(double[] weights) {
+        double lo = 0, hi = MAX_SCALE;
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        while (hi - lo > SCALE_TOLERANCE) {
+            double a = hi - ratio * (hi - lo), b = lo + ratio * (hi - lo);
+            if (scaleError(weights, a) < scaleError(weights, b)) {
+                hi = b;
+            } else {
+                lo = a;
+            }
+        }
+        return (lo + hi) / 2;
+    }
+
+    /**
+     * Return the error of WEIGHTS with SCALE as the scale.
+     */
+    private double scaleError(double[] weights, double scale) {
+        _scale = scale;
+        return error(weights, null);
+    }
+
+    /**
+     * Improve WEIGHTS by STEPS steps of gradient descent.
+     */
+    private void descend(double[] weights) {
+        int n = weights.length;
+        double[] gradient = new double[n], mean = new double[n],
+            square = new double[n];
+        for (int t = 1; t <= STEPS; t += 1) {
+            error(weights, gradient);
+            for (int i = 0; i < n; i += 1) {
+                mean[i] = DECAY1 * mean[i] + (1 - DECAY1) * gradient[i];
+                square[i] = DECAY2 * square[i]
+                    + (1 - DECAY2) * gradient[i] * gradient[i];
+                double m = mean[i] / (1 - Math.pow(DECAY1, t)),
+                    v = square[i] / (1 - Math.pow(DECAY2, t));
+                weights[i] -= RATE * m / (Math.sqrt(v) + 1e-12);
+            }
+        }
+    }
+
+    /**
+     * Return the mean squared error of the predictions made with WEIGHTS.
+     * Unless GRADIENT is null, set it to the gradient of the error with
+     * respect to WEIGHTS.
+     */
+    private double error(double[] weights, double[] gradient) {
+        int n = weights.length;
+        double[][] partials = new double[_threads][n + 1];
+        List<Future<?>> shards = new ArrayList<>();
+        for (int t = 0; t < _threads; t += 1) {
+            int shard = t;
+            shards.add(_pool.submit(() -> accumulate(weights, gradient != null,
+                                                     shard,
+                                                     partials[shard])));
+        }
+        for (Future<?> shard : shards) {
+            await(shard);
+        }
+        double total;
+        total = 0;
+        if (gradient != null) {
+            Arrays.fill(gradient, 0);
+        }
+        for (double[] partial : partials) {
+            total += partial[n];
+            for (int i = 0; gradient != null && i < n; i += 1) {
+                gradient[i] += partial[i] / _size;
+            }
+        }
+        return total / _size;
+    }
+
+    /**
+     * Add to PARTIAL[N], where N is the number of WEIGHTS, the squared
+     * errors of the predictions made with WEIGHTS for the positions in
+     * share SHARD of _threads shares, and, iff WITHGRADIENT, add to the
+     * rest of PARTIAL the gradients of those errors.
+     */
+    private void accumulate(double[] weights, boolean withGradient,
+                            int shard, double[] partial) {
+        int n = weights.length;
+        int from = (int) ((long) _size * shard / _threads),
+            to = (int) ((long) _size * (shard + 1) / _threads);
+        for (int p = from; p < to; p += 1) {
+            int[] f = _features[p];
+            double score = Evaluation.PIECE_VALUE * f[n];
+            for (int i = 0; i < n; i += 1) {
+                score += weights[i] * f[i];
+            }
+            double predicted =
+                1 / (1 + Math.exp(-_scale * score / Evaluation.PIECE_VALUE));
+            double diff = predicted - _results[p];
+            partial[n] += diff * diff;
+            if (withGradient) {
+                double d = 2 * diff * predicted * (1 - predicted)
+                    * _scale / Evaluation.PIECE_VALUE;
+                for (int i = 0; i < n; i += 1) {
+                    partial[i] += d * f[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait for SHARD to finish, rethrowing anything it threw.
+     */
+    private static void await(Future<?> shard) {
+        boolean done = false;
+        while (!done) {
+            try {
+                shard.get();
+                done = true;
+            } catch (InterruptedException excp) {
+                continue;
+            } catch (ExecutionException excp) {
+                throw new IllegalStateException(excp.getCause());
+            }
+        }
+    }
+
+    /**
+     * Print a usage message and exit.
+     */
+    private static void usage() {
+        System.err.println("Usage: java qirkat.Tuner SAMPLE WEIGHTS "
+                           + "[THREADS [PAIRS]]");
+        System.exit(1);
+    }
+
+    /**
+     * Number of threads to use.
+     */
+    private final int _threads;
+
+    /**
+     * The threads that compute errors and gradients.
+     */
+    private final ExecutorService _pool;
+
+    /**
+     * Number of positions.
+     */
+    private int _size;
+
+    /**
+     * For each position, the values of the features, indexed as the
+     * weights, followed by the material (see Evaluation.features).
+     */
+    private int[][] _features;
+
+    /**
+     * The result of the game for the side to move in each position.
+     */
+    private double[] _results;
+
+    /**
+     * The factor by which evaluations, in pieces, are scaled before
+     * they are passed through the logistic function.
+     */
+    private double _scale;
+}
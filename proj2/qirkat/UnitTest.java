@@ -18,7 +18,10 @@ public class UnitTest {
      */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(MoveTest.class, BoardTest.class,
-                CommandTest.class));
+                CommandTest.class, BitBoardTest.class,
+                TranspositionTableTest.class, MonteCarloAITest.class,
+                EvaluationTest.class, TablebaseTest.class,
+                OpeningBookTest.class, AITest.class));
     }
 
     @Test